@@ -0,0 +1,32 @@
+package com.wjy.wutool.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jmh基准测试入口。统一按吞吐量输出，并开启gc profiler输出分配速率（gc.alloc.rate.norm为每次操作分配的字节数）
+ * 运行：mvn -Pjmh compile exec:exec -Djmh.args="KvCache -f 1"，参数同jmh命令行，不指定时运行全部基准测试
+ *
+ * @author weijiayu
+ * @date 2026/10/17 17:40
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        if (cmdOptions.getIncludes().isEmpty()) {
+            builder.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+        }
+        Options options = builder.mode(Mode.Throughput).timeUnit(TimeUnit.SECONDS).addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
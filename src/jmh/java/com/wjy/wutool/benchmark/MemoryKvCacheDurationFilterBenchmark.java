@@ -0,0 +1,85 @@
+package com.wjy.wutool.benchmark;
+
+import com.wjy.wutool.util.MemoryKvCacheDurationFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemoryKvCacheDurationFilter多线程竞争基准测试。hotKeyCount越小，同一个key上的CAS竞争越激烈
+ *
+ * @author weijiayu
+ * @date 2026/10/17 17:50
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class MemoryKvCacheDurationFilterBenchmark {
+
+    @Param({"INTERVAL", "TOKEN_BUCKET", "SLIDING_WINDOW"})
+    private MemoryKvCacheDurationFilter.Mode mode;
+
+    @Param({"16", "65536"})
+    private int hotKeyCount;
+
+    private MemoryKvCacheDurationFilter filter;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filter = new MemoryKvCacheDurationFilter(1_000_000L, ChronoUnit.SECONDS, 1L, mode, 10);
+        keys = new String[hotKeyCount];
+        for (int i = 0; i < hotKeyCount; i++) {
+            keys[i] = "filter-bench-" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        filter.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+        private Date date;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            // 每轮复用一个Date，不计入Date的分配
+            date = new Date();
+        }
+    }
+
+    @Benchmark
+    public Boolean checkAndCache(Cursor cursor) {
+        cursor.index = (cursor.index + 1) % keys.length;
+        return filter.checkAndCacheKvIsOutOfDuration(keys[cursor.index], cursor.date);
+    }
+
+    @Benchmark
+    public boolean tryAcquire(Cursor cursor) {
+        cursor.index = (cursor.index + 1) % keys.length;
+        return filter.tryAcquire(keys[cursor.index]);
+    }
+}
@@ -0,0 +1,74 @@
+package com.wjy.wutool.benchmark;
+
+import com.wjy.wutool.util.MemoryTimedKvCacheUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemoryTimedKvCacheUtil读写基准测试。key预先生成，不计入字符串拼接的开销
+ *
+ * @author weijiayu
+ * @date 2026/10/17 17:45
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MemoryTimedKvCacheBenchmark {
+
+    private static final int KEY_COUNT = 1 << 16;
+    private static final String[] KEYS = new String[KEY_COUNT];
+    private static final Object VALUE = new Object();
+
+    static {
+        for (int i = 0; i < KEY_COUNT; i++) {
+            KEYS[i] = "kv-bench-" + i;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            for (String key : KEYS) {
+                MemoryTimedKvCacheUtil.cacheSecond(key, VALUE, 3600);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        private String nextKey() {
+            index = (index + 0x9E37) & (KEY_COUNT - 1);
+            return KEYS[index];
+        }
+    }
+
+    @Benchmark
+    public void put(CacheState cache, Cursor cursor) {
+        MemoryTimedKvCacheUtil.cacheSecond(cursor.nextKey(), VALUE, 3600);
+    }
+
+    @Benchmark
+    public Object get(CacheState cache, Cursor cursor) {
+        return MemoryTimedKvCacheUtil.getValue(cursor.nextKey());
+    }
+}
@@ -0,0 +1,56 @@
+package com.wjy.wutool.benchmark;
+
+import com.wjy.wutool.task.ParallelCallableUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ParallelCallableUtil并行执行基准测试。任务本身几乎不耗时，测的是调度和结果收集的开销
+ *
+ * @author weijiayu
+ * @date 2026/10/17 18:02
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+@State(Scope.Benchmark)
+public class ParallelCallableBenchmark {
+
+    @Param({"4", "32"})
+    private int taskCount;
+
+    private List<Callable> callableList;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        callableList = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            final int n = i;
+            callableList.add(() -> n * 31);
+        }
+    }
+
+    @Benchmark
+    public Object runAndWaitForComplete() {
+        return ParallelCallableUtil.runAndWaitForComplete(5, callableList);
+    }
+}
@@ -0,0 +1,55 @@
+package com.wjy.wutool.benchmark;
+
+import com.wjy.wutool.util.ShortIdUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShortIdUtil短id生成基准测试
+ *
+ * @author weijiayu
+ * @date 2026/10/17 17:58
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortIdBenchmark {
+
+    @State(Scope.Thread)
+    public static class Sequence {
+
+        private long id;
+        private final StringBuilder sb = new StringBuilder(ShortIdUtil.MAX_BASE62_LENGTH);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String generateShortId() {
+        return ShortIdUtil.generateShortId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int appendShortId(Sequence sequence) {
+        sequence.sb.setLength(0);
+        ShortIdUtil.appendShortId(sequence.sb);
+        return sequence.sb.length();
+    }
+
+    @Benchmark
+    public String generateShortIdByUnionId(Sequence sequence) {
+        return ShortIdUtil.generateShortId(++sequence.id);
+    }
+}
@@ -0,0 +1,67 @@
+package com.wjy.wutool.benchmark;
+
+import com.wjy.wutool.util.SimpleResourceLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * SimpleResourceLock加锁执行基准测试。keyCount为1时所有线程竞争同一把锁
+ *
+ * @author weijiayu
+ * @date 2026/10/17 17:55
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SimpleResourceLockBenchmark {
+
+    private static final Function<String, Object> APPLY_FUNC = k -> k;
+
+    @Param({"PER_KEY", "STRIPED", "REF_COUNTED"})
+    private SimpleResourceLock.LockMode lockMode;
+
+    @Param({"1", "1024", "1048576"})
+    private int keyCount;
+
+    private SimpleResourceLock<String> lock;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lock = new SimpleResourceLock<>(lockMode);
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "lock-bench-" + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+    }
+
+    @Benchmark
+    public Object doApply(Cursor cursor) {
+        cursor.index = (cursor.index + 1) % keys.length;
+        return lock.doApply(keys[cursor.index], APPLY_FUNC);
+    }
+}
@@ -0,0 +1,91 @@
+package com.wjy.wutool.msg.reactor.codec;
+
+import com.wjy.wutool.msg.reactor.dto.AbsBaseMsg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 紧凑二进制编解码。帧格式为 8字节大端msgId + 消息体，消息体的读写由调用方按字段自行实现，
+ * peekMsgId只读取帧头，不触碰消息体
+ *
+ * @author weijiayu
+ * @date 2026/10/17 21:30
+ */
+public class BinaryMsgCodec<Y extends AbsBaseMsg, Z extends AbsBaseMsg> implements MsgCodec<Y, Z> {
+
+    /** 帧头长度 */
+    public static final int HEADER_LENGTH = Long.BYTES;
+
+    private final BodyWriter<Y> bodyWriter;
+    private final BodyReader<Z> bodyReader;
+
+    public BinaryMsgCodec(BodyWriter<Y> bodyWriter, BodyReader<Z> bodyReader) {
+        this.bodyWriter = bodyWriter;
+        this.bodyReader = bodyReader;
+    }
+
+    @Override
+    public byte[] encode(Y msgObj) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(msgObj.getMsgId());
+            bodyWriter.write(msgObj, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Z decode(ByteBuffer buf) {
+        if (buf.remaining() < HEADER_LENGTH) {
+            throw new IllegalArgumentException("binary msg shorter than header: " + buf.remaining());
+        }
+        ByteBuffer body = buf.duplicate();
+        long msgId = body.getLong();
+        return bodyReader.read(msgId, body.slice());
+    }
+
+    @Override
+    public Long peekMsgId(ByteBuffer buf) {
+        if (buf.remaining() < HEADER_LENGTH) {
+            return null;
+        }
+        return buf.getLong(buf.position());
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    /**
+     * 消息体写入，msgId已写在帧头，无需重复写
+     */
+    @FunctionalInterface
+    public interface BodyWriter<T> {
+
+        void write(T msgObj, DataOutput out) throws IOException;
+    }
+
+    /**
+     * 消息体读取
+     */
+    @FunctionalInterface
+    public interface BodyReader<T> {
+
+        /**
+         * @param msgId 帧头里的消息id
+         * @param body 消息体，position为0
+         * @return T
+         */
+        T read(long msgId, ByteBuffer body);
+    }
+}
@@ -0,0 +1,146 @@
+package com.wjy.wutool.msg.reactor.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.wjy.wutool.msg.reactor.dto.AbsBaseMsg;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * fastjson编解码，utf-8字节直接解析。peekMsgId只扫描顶层字段，遇到msgId即停止
+ *
+ * @author weijiayu
+ * @date 2026/10/17 21:10
+ */
+public class FastjsonMsgCodec<Y extends AbsBaseMsg, Z extends AbsBaseMsg> implements MsgCodec<Y, Z> {
+
+    private static final byte[] MSG_ID_KEY = AbsBaseMsg.MSG_ID_FIELD.getBytes(StandardCharsets.UTF_8);
+
+    private final Class<Z> rspClass;
+
+    public FastjsonMsgCodec(Class<Z> rspClass) {
+        this.rspClass = rspClass;
+    }
+
+    @Override
+    public byte[] encode(Y msgObj) {
+        return JSON.toJSONBytes(msgObj);
+    }
+
+    @Override
+    public Z decode(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            return JSON.parseObject(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining(),
+                StandardCharsets.UTF_8.newDecoder(), rspClass);
+        }
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        return JSON.parseObject(bytes, rspClass);
+    }
+
+    @Override
+    public Long peekMsgId(ByteBuffer buf) {
+        int depth = 0;
+        int limit = buf.limit();
+        for (int i = buf.position(); i < limit; i++) {
+            byte b = buf.get(i);
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            } else if (b == '"') {
+                int end = skipString(buf, i, limit);
+                if (depth == 1 && isMsgIdKey(buf, i + 1, end)) {
+                    int valueStart = skipColon(buf, end + 1, limit);
+                    // 后面没有冒号说明是字符串值恰好等于msgId，继续往后找
+                    if (valueStart > 0) {
+                        return readLong(buf, valueStart, limit);
+                    }
+                }
+                i = end;
+            }
+        }
+        return null;
+    }
+
+    /** 返回字符串结束引号的位置 */
+    private static int skipString(ByteBuffer buf, int start, int limit) {
+        for (int i = start + 1; i < limit; i++) {
+            byte b = buf.get(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static boolean isMsgIdKey(ByteBuffer buf, int start, int end) {
+        if (end - start != MSG_ID_KEY.length) {
+            return false;
+        }
+        for (int i = 0; i < MSG_ID_KEY.length; i++) {
+            if (buf.get(start + i) != MSG_ID_KEY[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 返回冒号后的位置，不是冒号时返回-1 */
+    private static int skipColon(ByteBuffer buf, int start, int limit) {
+        int i = start;
+        while (i < limit && isWhitespace(buf.get(i))) {
+            i++;
+        }
+        return i < limit && buf.get(i) == ':' ? i + 1 : -1;
+    }
+
+    private static Long readLong(ByteBuffer buf, int start, int limit) {
+        int i = start;
+        while (i < limit && isWhitespace(buf.get(i))) {
+            i++;
+        }
+        // fastjson把字符串形式的数字也解析成long，引号内只能是数字
+        boolean quoted = i < limit && buf.get(i) == '"';
+        if (quoted) {
+            i++;
+        }
+        boolean negative = i < limit && buf.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        // 按负数累加，Long.MIN_VALUE也能表示
+        long value = 0;
+        int digits = 0;
+        for (; i < limit && buf.get(i) >= '0' && buf.get(i) <= '9'; i++, digits++) {
+            int digit = buf.get(i) - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                // 超出long范围，交给完整解析
+                return null;
+            }
+            value = value * 10 - digit;
+        }
+        if (digits == 0) {
+            return null;
+        }
+        if (quoted ? i >= limit || buf.get(i) != '"' : i < limit && isNumberTail(buf.get(i))) {
+            // 引号内有非数字字符，或数字后跟着小数点、指数，交给完整解析
+            return null;
+        }
+        if (negative) {
+            return value;
+        }
+        return value == Long.MIN_VALUE ? null : -value;
+    }
+
+    /** 小数或科学计数法，不是整数id */
+    private static boolean isNumberTail(byte b) {
+        return b == '.' || b == 'e' || b == 'E';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+}
@@ -0,0 +1,85 @@
+package com.wjy.wutool.msg.reactor.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.wjy.wutool.msg.reactor.dto.AbsBaseMsg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * jackson编解码。peekMsgId用流式解析逐个读取顶层字段，遇到msgId即停止，其他字段的值直接跳过不构造对象
+ *
+ * @author weijiayu
+ * @date 2026/10/17 21:20
+ */
+public class JacksonMsgCodec<Y extends AbsBaseMsg, Z extends AbsBaseMsg> implements MsgCodec<Y, Z> {
+
+    private final ObjectMapper objectMapper;
+    private final Class<Z> rspClass;
+
+    public JacksonMsgCodec(Class<Z> rspClass) {
+        this(new ObjectMapper(), rspClass);
+    }
+
+    public JacksonMsgCodec(ObjectMapper objectMapper, Class<Z> rspClass) {
+        this.objectMapper = objectMapper;
+        this.rspClass = rspClass;
+    }
+
+    @Override
+    public byte[] encode(Y msgObj) {
+        try {
+            return objectMapper.writeValueAsBytes(msgObj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Z decode(ByteBuffer buf) {
+        try {
+            if (buf.hasArray()) {
+                return objectMapper.readValue(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining(),
+                    rspClass);
+            }
+            return objectMapper.readValue(new ByteBufferBackedInputStream(buf.duplicate()), rspClass);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Long peekMsgId(ByteBuffer buf) {
+        try (JsonParser parser = createParser(buf)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (AbsBaseMsg.MSG_ID_FIELD.equals(name)) {
+                    if (value == JsonToken.VALUE_NUMBER_INT) {
+                        return parser.getLongValue();
+                    }
+                    return value == JsonToken.VALUE_STRING ? Long.valueOf(parser.getText()) : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private JsonParser createParser(ByteBuffer buf) throws IOException {
+        if (buf.hasArray()) {
+            return objectMapper.getFactory().createParser(buf.array(), buf.arrayOffset() + buf.position(),
+                buf.remaining());
+        }
+        return objectMapper.getFactory().createParser(new ByteBufferBackedInputStream(buf.duplicate()));
+    }
+}
@@ -0,0 +1,46 @@
+package com.wjy.wutool.msg.reactor.codec;
+
+import com.wjy.wutool.msg.reactor.dto.AbsBaseMsg;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 消息编解码。直接在byte[]和ByteBuffer上工作，不经过String中转
+ * 其中泛型Y为消息请求，Z为消息响应
+ *
+ * @author weijiayu
+ * @date 2026/10/17 21:05
+ */
+public interface MsgCodec<Y extends AbsBaseMsg, Z extends AbsBaseMsg> {
+
+    /**
+     * 请求消息编码
+     *
+     * @param msgObj 请求消息
+     * @return byte[]
+     */
+    byte[] encode(Y msgObj);
+
+    /**
+     * 响应消息解码，读取buf从position到limit的内容
+     *
+     * @param buf 响应消息
+     * @return Z
+     */
+    Z decode(ByteBuffer buf);
+
+    /**
+     * 只读取响应的消息id，不做完整解析，用于在解码前丢弃无人等待的响应。不改变buf的position
+     *
+     * @param buf 响应消息
+     * @return java.lang.Long 读不到或无法确定时返回null，调用方会退回完整解析
+     */
+    Long peekMsgId(ByteBuffer buf);
+
+    /**
+     * 是否为二进制编码。二进制编码的结果不能按字符串发送，服务需要复写sendMsgBytes
+     */
+    default boolean isBinary() {
+        return false;
+    }
+}
@@ -11,6 +11,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public abstract class AbsBaseMsg {
 
+    /** 消息id的字段名，编解码按该字段读取响应的消息id */
+    public static final String MSG_ID_FIELD = "msgId";
+
     /** 消息id，保证唯一 */
     public abstract Long getMsgId();
 }
@@ -3,29 +3,123 @@ package com.wjy.wutool.msg.reactor.service;
 /**
  * 简单消息响应模型。将三方的异步响应，包装成阻塞等待（超时丢弃）同步响应
  * 其中泛型Y为消息请求，Z为消息响应。消息请求id保证唯一，响应消息的id和请求时一致
+ * <p>
+ * 发送前按消息id登记一个future，收到响应时立即完成，等待方不必等满msgWaitSec。
+ * sendMsgAsync不占用等待线程，超时由共享的时间轮统一处理。等待中的请求数有上限，超过时按拒绝策略处理；
+ * 超时后才到的响应只计数后丢弃
+ * <p>
+ * 传输层支持一帧多条消息时，可开启批量发送：消息先入队，由发送线程在时间或条数窗口内攒成一个json数组，
+ * 复用同一个序列化缓冲区，通过sendMsgBatch一次发出。响应仍按消息id各自完成对应的future
+ * <p>
+ * 设置MsgCodec后按字节收发：请求编码后通过sendMsgBytes逐条发送，响应通过handleMsg(ByteBuffer)处理，
+ * 开启discardUncorrelated后先只读取消息id，无人等待的响应不做完整解析直接丢弃，读不出消息id时退回完整解析
  * 
  * @author weijiayu
  * @date 2024/4/29 17:25
  */
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.wjy.wutool.msg.reactor.codec.MsgCodec;
 import com.wjy.wutool.msg.reactor.dto.AbsBaseMsg;
+import com.wjy.wutool.util.HashedWheelTimer;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 public abstract class AbsMsgReactorService<Y extends AbsBaseMsg, Z extends AbsBaseMsg> {
 
-    /** 消息响应缓存，key为消息请求id */
-    private HashMap<Long, Z> msgResultMap = new HashMap<>();
-    /** 对key加锁 */
-    private ConcurrentHashMap<Long, Object> msgKeyLockMap = new ConcurrentHashMap<>();
+    /** 等待响应超时时间轮，所有实例共享。10毫秒一格，一圈512格 */
+    private static final HashedWheelTimer TIMEOUT_TIMER =
+        new HashedWheelTimer("msg-reactor-timeout", 10, TimeUnit.MILLISECONDS, 512);
+    /** 超时完成future的线程池，所有实例共享。调用方挂在future上的回调在这里执行，不占用时间轮线程 */
+    private static final ThreadPoolExecutor TIMEOUT_EXECUTOR;
+
+    static {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        TIMEOUT_EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            (r) -> {
+                Thread t = new Thread(r, "msg-reactor-timeout-callback");
+                t.setDaemon(true);
+                return t;
+            });
+        TIMEOUT_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** 等待响应的请求，key为消息请求id */
+    private final ConcurrentHashMap<Long, Pending<Z>> pendingMap = new ConcurrentHashMap<>();
+    /** 等待中请求数的许可，从pendingMap移除时归还 */
+    private volatile Semaphore pendingPermits;
+    private volatile int maxPending;
+    private volatile RejectPolicy rejectPolicy = RejectPolicy.ABORT;
+    /** 超时后才到的响应数 */
+    private final LongAdder lateReplyCount = new LongAdder();
+    /** 超时完成future的线程池 */
+    private volatile Executor timeoutExecutor = TIMEOUT_EXECUTOR;
+    /** 批量发送，为null时逐条发送 */
+    private volatile BatchSender batchSender;
+    /** 字节编解码，为null时按fastjson字符串收发 */
+    private volatile MsgCodec<Y, Z> codec;
+    /** 字节收发时，是否丢弃无人等待的响应，不交给handleMsgWithBiz */
+    private volatile boolean discardUncorrelated = false;
+    /** 字节收发时，无人等待而未做完整解析直接丢弃的响应数 */
+    private final LongAdder discardedCount = new LongAdder();
     /** 等待消息响应阻塞时间，单位秒 */
     public Integer msgWaitSec = 2;
 
+    /**
+     * 等待中请求数达到上限时的处理方式
+     */
+    public enum RejectPolicy {
+        /** 直接失败 */
+        ABORT,
+        /** 阻塞发送线程等待空位，最多等msgWaitSec */
+        WAIT
+    }
+
+    public AbsMsgReactorService() {
+        this(10000, RejectPolicy.ABORT);
+    }
+
+    /**
+     * @param maxPending 等待响应的请求数上限
+     * @param rejectPolicy 达到上限时的处理方式
+     */
+    public AbsMsgReactorService(int maxPending, RejectPolicy rejectPolicy) {
+        setMaxPending(maxPending, rejectPolicy);
+    }
+
+    /**
+     * 修改等待中请求数上限。只影响之后发送的请求
+     */
+    public void setMaxPending(int maxPending, RejectPolicy rejectPolicy) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending must be positive");
+        }
+        this.maxPending = maxPending;
+        this.rejectPolicy = rejectPolicy;
+        this.pendingPermits = new Semaphore(maxPending);
+    }
+
     /**
      * 消息发送
      * 
@@ -36,6 +130,26 @@ public abstract class AbsMsgReactorService<Y extends AbsBaseMsg, Z extends AbsBa
      */
     public abstract Boolean sendMsg(String msg);
 
+    /**
+     * 批量发送，frame为多条消息组成的json数组。默认整帧交给sendMsg发送，传输层对多消息帧有专门处理时可复写
+     *
+     * @param frame 消息帧
+     * @return java.lang.Boolean
+     */
+    public Boolean sendMsgBatch(String frame) {
+        return sendMsg(frame);
+    }
+
+    /**
+     * 字节消息发送。默认按utf-8转成字符串交给sendMsg，适用于json等文本编解码；二进制编解码必须复写
+     *
+     * @param msg 编码后的消息
+     * @return java.lang.Boolean
+     */
+    public Boolean sendMsgBytes(byte[] msg) {
+        return sendMsg(new String(msg, StandardCharsets.UTF_8));
+    }
+
     /**
      * 响应消息解析。交给实现者处理，避免泛型擦除
      * 
@@ -56,33 +170,150 @@ public abstract class AbsMsgReactorService<Y extends AbsBaseMsg, Z extends AbsBa
      */
     public abstract Boolean handleMsgWithBiz(Z msgObj);
 
+    /**
+     * 设置字节编解码，为null时恢复fastjson字符串收发
+     *
+     * @throws IllegalArgumentException 二进制编解码但没有复写sendMsgBytes
+     */
+    public void setCodec(MsgCodec<Y, Z> codec) {
+        if (codec != null && codec.isBinary() && !overridesSendMsgBytes()) {
+            throw new IllegalArgumentException(
+                codec.getClass().getSimpleName() + " is binary, " + getClass().getName() + " must override sendMsgBytes");
+        }
+        this.codec = codec;
+    }
+
+    /**
+     * 设置超时完成future的线程池，默认使用所有实例共享的守护线程池。sendMsgAsync超时时，
+     * 调用方的thenApply等回调在该线程池上执行
+     */
+    public void setTimeoutExecutor(Executor timeoutExecutor) {
+        this.timeoutExecutor = timeoutExecutor == null ? TIMEOUT_EXECUTOR : timeoutExecutor;
+    }
+
+    /**
+     * 字节收发时，是否丢弃无人等待的响应。默认不丢弃，和字符串收发一样交给handleMsgWithBiz；
+     * 对端没有推送类消息时可设为true，超时后才到的响应不再做完整解析，丢弃数见getDiscardedCount
+     */
+    public void setDiscardUncorrelated(boolean discardUncorrelated) {
+        this.discardUncorrelated = discardUncorrelated;
+    }
+
+    /**
+     * 开启批量发送。批量发送只用于字符串收发，设置了codec时仍逐条发送
+     *
+     * @param maxBatchSize 单帧最多消息数
+     * @param maxDelayMs 第一条消息入队后最多等待的毫秒数，到时不满也发送
+     */
+    public synchronized void enableBatching(int maxBatchSize, long maxDelayMs) {
+        disableBatching();
+        BatchSender sender = new BatchSender(Math.max(1, maxBatchSize), TimeUnit.MILLISECONDS.toNanos(maxDelayMs));
+        sender.start();
+        batchSender = sender;
+    }
+
+    /**
+     * 关闭批量发送，已入队的消息发送完后返回
+     */
+    public synchronized void disableBatching() {
+        BatchSender sender = batchSender;
+        if (sender == null) {
+            return;
+        }
+        batchSender = null;
+        sender.stop();
+    }
+
     /**
      * 发送消息并获取响应结果
      * 
      * @author weijiayu
      * @date 2024/4/30 11:55
      * @param msgObj
-     * @return Z
+     * @return Z 超时、发送失败或被拒绝时返回null
      */
     public Z sendMsgAndGetResult(Y msgObj) {
-        Long msgId = msgObj.getMsgId();
-        boolean sendResult = sendMsg(JSON.toJSONString(msgObj));
-        if (!sendResult) {
+        try {
+            // 超时由时间轮完成，这里无需再带超时
+            return sendMsgAsync(msgObj).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                log.warn("msg {} response timeout after {}s", msgObj.getMsgId(), msgWaitSec);
+            } else {
+                log.error(e.getCause().getMessage(), e.getCause());
+            }
             return null;
         }
-        // 发送成功，阻塞等待结果
+    }
+
+    /**
+     * 异步发送消息，超时时间为msgWaitSec
+     *
+     * @param msgObj
+     * @return java.util.concurrent.CompletableFuture<Z> 收到响应时在handleMsg的线程上完成，
+     *     超时时在timeoutExecutor上以TimeoutException异常完成，被拒绝以RejectedExecutionException异常完成，
+     *     消息id为空时以IllegalArgumentException异常完成
+     */
+    public CompletableFuture<Z> sendMsgAsync(Y msgObj) {
+        return sendMsgAsync(msgObj, msgWaitSec, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 异步发送消息
+     *
+     * @param msgObj
+     * @param timeout 等待响应超时时间
+     * @param unit 时间单位
+     * @return java.util.concurrent.CompletableFuture<Z>
+     */
+    public CompletableFuture<Z> sendMsgAsync(Y msgObj, long timeout, TimeUnit unit) {
+        Long msgId = msgObj.getMsgId();
+        CompletableFuture<Z> future = new CompletableFuture<>();
+        if (msgId == null) {
+            // 先于占用许可检查，避免登记失败后许可无法归还
+            future.completeExceptionally(new IllegalArgumentException("msgId is null"));
+            return future;
+        }
+        Semaphore permits = pendingPermits;
+        if (!acquirePermit(permits)) {
+            future.completeExceptionally(
+                new RejectedExecutionException("pending msg count reached limit " + maxPending));
+            return future;
+        }
+        // 先登记再发送，避免响应比登记先到
+        Pending<Z> pending = new Pending<>(future, permits);
+        if (pendingMap.putIfAbsent(msgId, pending) != null) {
+            permits.release();
+            future.completeExceptionally(new IllegalStateException("duplicate msgId " + msgId));
+            return future;
+        }
+        pending.timeout = TIMEOUT_TIMER.newTimeout(() -> {
+            if (removePending(msgId, pending)) {
+                completeTimeout(msgId, future);
+            }
+        }, timeout, unit);
+        MsgCodec<Y, Z> msgCodec = codec;
+        BatchSender sender = batchSender;
+        if (msgCodec == null && sender != null && sender.enqueue(new BatchItem(msgId, msgObj, pending))) {
+            return future;
+        }
+        boolean sendResult;
         try {
-            doInitResource(msgId);
-            // TODO 硬休眠等待，可以改成类似future task get方式while循环并判断起始时间是否超时，提升响应速度
-            TimeUnit.SECONDS.sleep(msgWaitSec);
-            return msgResultMap.get(msgId);
+            sendResult = msgCodec != null ? sendMsgBytes(msgCodec.encode(msgObj))
+                : sendMsg(JSON.toJSONString(msgObj));
         } catch (Throwable t) {
-            log.error(t.getMessage(), t);
-            return null;
-        } finally {
-            // 擦除记录。取后删除，或等待超时丢弃
-            doReleaseResource(msgId);
+            if (removePending(msgId, pending)) {
+                future.completeExceptionally(t);
+            }
+            return future;
         }
+        if (!sendResult && removePending(msgId, pending)) {
+            future.completeExceptionally(new IllegalStateException("msg " + msgId + " send failed"));
+        }
+        return future;
     }
 
     /**
@@ -91,7 +322,7 @@ public abstract class AbsMsgReactorService<Y extends AbsBaseMsg, Z extends AbsBa
     public Boolean handleMsg(String msg) {
         try {
             Z msgObj = parseRspMsg(msg);
-            doPutResource(msgObj);
+            doCompletePending(msgObj);
             return handleMsgWithBiz(msgObj);
         } catch (Throwable t) {
             log.error(t.getMessage(), t);
@@ -100,47 +331,279 @@ public abstract class AbsMsgReactorService<Y extends AbsBaseMsg, Z extends AbsBa
     }
 
     /**
-     * 申请资源
+     * 字节消息处理模板方法，需先设置codec
      */
-    private void doInitResource(Long msgId) {
-        msgKeyLockMap.put(msgId, new Object());
-        msgResultMap.put(msgId, null);
+    public Boolean handleMsg(byte[] msg) {
+        return handleMsg(ByteBuffer.wrap(msg));
     }
 
     /**
-     * 释放资源
+     * 字节消息处理模板方法，需先设置codec。读取buf从position到limit的内容
      */
-    private void doReleaseResource(Long msgId) {
-        Object resource = msgKeyLockMap.get(msgId);
-        if (resource == null) {
-            return;
+    public Boolean handleMsg(ByteBuffer msg) {
+        try {
+            MsgCodec<Y, Z> msgCodec = codec;
+            if (msgCodec == null) {
+                throw new IllegalStateException("codec not set");
+            }
+            // 读不出消息id时不能判断是否有人等待，按完整解析处理
+            Long msgId = msgCodec.peekMsgId(msg);
+            if (msgId != null && discardUncorrelated && !pendingMap.containsKey(msgId)) {
+                // 无人等待，不做完整解析
+                discardedCount.increment();
+                return false;
+            }
+            Z msgObj = msgCodec.decode(msg);
+            doCompletePending(msgObj);
+            return handleMsgWithBiz(msgObj);
+        } catch (Throwable t) {
+            log.error(t.getMessage(), t);
+            return false;
         }
-        synchronized (resource) {
-            msgKeyLockMap.remove(msgId);
-            msgResultMap.remove(msgId);
+    }
+
+    private boolean overridesSendMsgBytes() {
+        try {
+            return getClass().getMethod("sendMsgBytes", byte[].class).getDeclaringClass()
+                != AbsMsgReactorService.class;
+        } catch (NoSuchMethodException e) {
+            return false;
         }
     }
 
+    /** 当前等待响应的请求数 */
+    public int getPendingCount() {
+        return pendingMap.size();
+    }
+
+    /** 交给doCompletePending但无人等待的响应数，包括超时后才到的 */
+    public long getLateReplyCount() {
+        return lateReplyCount.sum();
+    }
+
+    /** 字节收发时，开启discardUncorrelated后未做完整解析直接丢弃的响应数 */
+    public long getDiscardedCount() {
+        return discardedCount.sum();
+    }
+
     /**
-     * 放置资源
+     * 完成等待中的请求。已超时的请求已被移除，响应计数后忽略
      */
-    private Boolean doPutResource(Z msgObj) {
+    private Boolean doCompletePending(Z msgObj) {
         Long msgId = msgObj.getMsgId();
-        if (!msgKeyLockMap.containsKey(msgId)) {
+        Pending<Z> pending = pendingMap.get(msgId);
+        if (pending == null || !removePending(msgId, pending)) {
+            lateReplyCount.increment();
+            return false;
+        }
+        return pending.future.complete(msgObj);
+    }
+
+    /**
+     * 在时间轮线程上触发，转交线程池完成future，时间轮线程只做移除
+     */
+    private void completeTimeout(Long msgId, CompletableFuture<Z> future) {
+        TimeoutException e = new TimeoutException("msg " + msgId + " response timeout");
+        try {
+            timeoutExecutor.execute(() -> future.completeExceptionally(e));
+        } catch (RejectedExecutionException rejected) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private boolean acquirePermit(Semaphore permits) {
+        if (rejectPolicy == RejectPolicy.ABORT) {
+            return permits.tryAcquire();
+        }
+        try {
+            return permits.tryAcquire(msgWaitSec, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
-        Object resource = msgKeyLockMap.get(msgId);
-        if (resource == null) {
+    }
+
+    /**
+     * 移除等待记录。响应、超时、发送失败可能同时发生，只有移除成功的一方负责完成future和归还许可
+     */
+    private boolean removePending(Long msgId, Pending<Z> pending) {
+        if (!pendingMap.remove(msgId, pending)) {
             return false;
         }
-        // 对key加锁。避免在删除后执行put操作，对象永远不得释放，占用内存
-        synchronized (resource) {
-            // 指令执行顺序有先后，重入后第二次判断
-            if (!msgKeyLockMap.containsKey(msgId)) {
-                return false;
+        HashedWheelTimer.Timeout timeout = pending.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        pending.permits.release();
+        return true;
+    }
+
+    private final class BatchItem {
+
+        private final Long msgId;
+        private final Y msgObj;
+        private final Pending<Z> pending;
+
+        private BatchItem(Long msgId, Y msgObj, Pending<Z> pending) {
+            this.msgId = msgId;
+            this.msgObj = msgObj;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * 批量发送线程。序列化器和缓冲区只在该线程内使用，每帧复用。
+     * 帧内各条消息独立展开，不输出fastjson的$ref引用，对端不必是fastjson也能解析
+     */
+    private final class BatchSender implements Runnable {
+
+        /** 缓冲区超过该长度后不再复用，避免偶发的大帧长期占用内存 */
+        private static final int MAX_RETAINED_CHARS = 1 << 20;
+
+        private final BlockingQueue<BatchItem> queue = new LinkedBlockingQueue<>();
+        private final int maxBatchSize;
+        private final long maxDelayNanos;
+        private final Thread thread;
+        private final List<BatchItem> batch = new ArrayList<>();
+        /** 攒帧的缓冲区，序列化器写满或写完一帧时刷入 */
+        private StringWriter frameWriter = new StringWriter(4096);
+        private SerializeWriter out;
+        private JSONSerializer serializer;
+        private volatile boolean stopped = false;
+
+        private BatchSender(int maxBatchSize, long maxDelayNanos) {
+            this.maxBatchSize = maxBatchSize;
+            this.maxDelayNanos = maxDelayNanos;
+            this.thread = new Thread(this, "msg-reactor-batch-" + AbsMsgReactorService.this.getClass().getSimpleName());
+            this.thread.setDaemon(true);
+            resetWriter();
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        /**
+         * 入队。关闭后入队的消息由调用方逐条发送，不会滞留在队列里
+         *
+         * @return boolean 是否已交给批量发送
+         */
+        private boolean enqueue(BatchItem item) {
+            queue.add(item);
+            // 停止时会先置标记再清空队列：标记未置位说明一定会被清空流程看到，
+            // 已置位时能从队列里移除说明清空流程还没取到，改为调用方自己发
+            return !stopped || !queue.remove(item);
+        }
+
+        private void resetWriter() {
+            frameWriter = new StringWriter(4096);
+            out = new SerializeWriter(frameWriter, 4096, SerializerFeature.DisableCircularReferenceDetect);
+            serializer = new JSONSerializer(out);
+        }
+
+        private void stop() {
+            stopped = true;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 停止前后并发入队的消息，在调用线程上发完
+            while (!queue.isEmpty()) {
+                queue.drainTo(batch, maxBatchSize);
+                flush();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!stopped || !queue.isEmpty()) {
+                try {
+                    BatchItem first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < maxBatchSize) {
+                        // 已经攒够的先直接取，不够再等到窗口结束
+                        if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                            continue;
+                        }
+                        long remainNanos = deadline - System.nanoTime();
+                        BatchItem item = remainNanos > 0 ? queue.poll(remainNanos, TimeUnit.NANOSECONDS) : null;
+                        if (item == null) {
+                            break;
+                        }
+                        batch.add(item);
+                    }
+                } catch (InterruptedException e) {
+                    log.warn("msg batch sender interrupted");
+                }
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
             }
-            msgResultMap.put(msgId, msgObj);
-            return true;
+            StringBuffer frame = frameWriter.getBuffer();
+            try {
+                frame.setLength(0);
+                out.write('[');
+                int count = 0;
+                for (BatchItem item : batch) {
+                    // 等待期间已超时的不再发送
+                    if (item.pending.future.isDone()) {
+                        continue;
+                    }
+                    if (count++ > 0) {
+                        out.write(',');
+                    }
+                    serializer.write(item.msgObj);
+                }
+                out.write(']');
+                out.flush();
+                if (count == 0) {
+                    return;
+                }
+                if (!sendMsgBatch(frame.toString())) {
+                    failBatch(new IllegalStateException("msg batch send failed"));
+                }
+            } catch (Throwable t) {
+                log.error(t.getMessage(), t);
+                failBatch(t);
+            } finally {
+                batch.clear();
+                if (frame.capacity() > MAX_RETAINED_CHARS) {
+                    resetWriter();
+                } else if (out.size() > 0) {
+                    // 序列化中途出错时丢弃未刷出的内容
+                    out.flush();
+                }
+            }
+        }
+
+        private void failBatch(Throwable t) {
+            for (BatchItem item : batch) {
+                if (removePending(item.msgId, item.pending)) {
+                    item.pending.future.completeExceptionally(t);
+                }
+            }
+        }
+    }
+
+    private static final class Pending<T> {
+
+        private final CompletableFuture<T> future;
+        /** 登记时使用的许可，修改上限后仍归还到原来的许可 */
+        private final Semaphore permits;
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        private Pending(CompletableFuture<T> future, Semaphore permits) {
+            this.future = future;
+            this.permits = permits;
         }
     }
 }
@@ -0,0 +1,120 @@
+package com.wjy.wutool.task;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 大in查询的自适应分片大小。按实测的分片查询耗时和返回行数，用AIMD方式调整in条件个数和并行度：
+ * 耗时低于目标时分片大小加性增长、并行度加1，超过目标时分片大小减半，严重超时（2倍目标）或查询失败时并行度也减半
+ * <p>
+ * 分片大小不会超过数据库绑定参数上限，pg驱动单条sql最多32767个绑定参数，需扣除sql里其他参数的个数
+ *
+ * @author weijiayu
+ * @date 2026/10/17 20:10
+ */
+@Slf4j
+public class AdaptivePartitionSizer {
+
+    /** pg jdbc驱动单条sql的绑定参数上限 */
+    public static final int POSTGRES_MAX_BIND_PARAMS = 32767;
+
+    private final long targetLatencyNanos;
+    private final int minSize;
+    private final int maxSize;
+    private final int maxParallelism;
+    /** 加性增长的步长 */
+    private final int increaseStep;
+    /** 单个分片返回行数上限，超过时按超时处理，0表示不限制 */
+    private final int maxRowsPerPartition;
+
+    private int partitionSize;
+    private int parallelism;
+
+    /**
+     * @param targetLatencyMs 单个分片的目标查询耗时
+     * @param initialSize 初始分片大小
+     * @param maxParallelism 最大并行度
+     */
+    public AdaptivePartitionSizer(long targetLatencyMs, int initialSize, int maxParallelism) {
+        this(targetLatencyMs, initialSize, 10, POSTGRES_MAX_BIND_PARAMS, maxParallelism, 0, 0);
+    }
+
+    /**
+     * @param targetLatencyMs 单个分片的目标查询耗时
+     * @param initialSize 初始分片大小
+     * @param minSize 最小分片大小
+     * @param maxSize 最大分片大小
+     * @param maxParallelism 最大并行度
+     * @param reservedBindParams sql里in条件以外的绑定参数个数，从绑定参数上限中扣除
+     * @param maxRowsPerPartition 单个分片返回行数上限，0表示不限制
+     */
+    public AdaptivePartitionSizer(long targetLatencyMs, int initialSize, int minSize, int maxSize, int maxParallelism,
+                                  int reservedBindParams, int maxRowsPerPartition) {
+        this.targetLatencyNanos = targetLatencyMs * 1_000_000L;
+        this.maxSize = Math.max(1, Math.min(maxSize, POSTGRES_MAX_BIND_PARAMS - reservedBindParams));
+        this.minSize = Math.max(1, Math.min(minSize, this.maxSize));
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.maxRowsPerPartition = maxRowsPerPartition;
+        this.partitionSize = clamp(initialSize, this.minSize, this.maxSize);
+        this.increaseStep = Math.max(1, this.partitionSize / 4);
+        // 先用一半的并行度探测，避免一开始就压满数据库
+        this.parallelism = Math.max(1, this.maxParallelism / 2);
+    }
+
+    /** 下一个分片的大小 */
+    public synchronized int nextPartitionSize() {
+        return partitionSize;
+    }
+
+    /** 当前允许同时执行的分片数 */
+    public synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    /**
+     * 记录一次分片查询的实测结果
+     *
+     * @param size 分片大小
+     * @param latencyNanos 查询耗时
+     * @param rowCount 返回行数
+     */
+    public synchronized void record(int size, long latencyNanos, int rowCount) {
+        boolean tooManyRows = maxRowsPerPartition > 0 && rowCount > maxRowsPerPartition;
+        if (latencyNanos > targetLatencyNanos || tooManyRows) {
+            // 只按不小于当前大小的样本减小，避免窗口内更早提交的小分片重复触发
+            if (size >= partitionSize) {
+                partitionSize = Math.max(minSize, partitionSize / 2);
+            }
+            if (latencyNanos > targetLatencyNanos * 2) {
+                parallelism = Math.max(1, parallelism / 2);
+            }
+        } else if (size >= partitionSize) {
+            partitionSize = Math.min(maxSize, partitionSize + increaseStep);
+            parallelism = Math.min(maxParallelism, parallelism + 1);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("partition size={} latency={}ms rows={}, next size={} parallelism={}", size,
+                latencyNanos / 1_000_000L, rowCount, partitionSize, parallelism);
+        }
+    }
+
+    /**
+     * 记录一次分片查询失败。语句超时、连接耗尽等失败多是数据库过载，分片大小和并行度都减半
+     *
+     * @param size 分片大小
+     */
+    public synchronized void onFailure(int size) {
+        if (size >= partitionSize) {
+            partitionSize = Math.max(minSize, partitionSize / 2);
+        }
+        parallelism = Math.max(1, parallelism / 2);
+        log.debug("partition size={} failed, next size={} parallelism={}", size, partitionSize, parallelism);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
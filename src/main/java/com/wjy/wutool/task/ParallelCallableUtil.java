@@ -2,14 +2,22 @@ package com.wjy.wutool.task;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 并行执行任务工具类。阻塞等待所有任务都执行完成并收集结果，超时自动终止未完成的任务并退出
+ * <p>
+ * 任务提交到共享线程池执行，不再每次调用创建线程池。运行在JDK 21及以上时默认使用虚拟线程，否则为有界线程池：
+ * 不排队直接扩容到最大线程数，线程用满后调用方在截止时间内等待空闲线程再提交（背压），截止前仍等不到的任务记为超时，
+ * 任务不会在调用线程上执行而突破超时时间
+ * 可通过setExecutorMode切换为ForkJoinPool，也可传入自定义线程池
  *
  * @author weijiayu
  * @date 2025/3/14 10:48
@@ -19,6 +27,77 @@ public class ParallelCallableUtil {
 
     // 任务保底最短超时时间
     private static final Long MIN_TASK_TIME_OUT_MS = 100L;
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static final int DEFAULT_CORE_SIZE = CPU_COUNT * 2;
+    private static final int DEFAULT_MAX_SIZE = CPU_COUNT * 8;
+
+    private static volatile ExecutorService sharedExecutor;
+    private static volatile ExecutorMode executorMode;
+
+    static {
+        // 虚拟线程可用时优先使用
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        if (virtualExecutor != null) {
+            sharedExecutor = virtualExecutor;
+            executorMode = ExecutorMode.VIRTUAL_THREAD;
+        } else {
+            sharedExecutor = newBoundedPool(DEFAULT_CORE_SIZE, DEFAULT_MAX_SIZE, 0);
+            executorMode = ExecutorMode.BOUNDED_POOL;
+        }
+    }
+
+    /**
+     * 切换共享线程池的类型。之前的有界线程池会在已提交任务执行完后关闭
+     *
+     * @param mode 线程池类型，虚拟线程不可用时退回有界线程池
+     * @return com.wjy.wutool.task.ParallelCallableUtil.ExecutorMode 实际生效的类型
+     */
+    public static synchronized ExecutorMode setExecutorMode(ExecutorMode mode) {
+        ExecutorService executor;
+        switch (mode) {
+            case FORK_JOIN_POOL:
+                // 任务多为阻塞调用时，公共池可能被占满，建议改用有界线程池或虚拟线程
+                executor = ForkJoinPool.commonPool();
+                break;
+            case VIRTUAL_THREAD:
+                executor = newVirtualThreadExecutor();
+                if (executor == null) {
+                    log.warn("virtual threads not available on java {}, fall back to bounded pool",
+                        System.getProperty("java.version"));
+                    mode = ExecutorMode.BOUNDED_POOL;
+                    executor = newBoundedPool(DEFAULT_CORE_SIZE, DEFAULT_MAX_SIZE, 0);
+                }
+                break;
+            default:
+                executor = newBoundedPool(DEFAULT_CORE_SIZE, DEFAULT_MAX_SIZE, 0);
+        }
+        replaceExecutor(executor, mode);
+        return mode;
+    }
+
+    /**
+     * 重新配置有界线程池
+     *
+     * @param coreSize 核心线程数
+     * @param maxSize 最大线程数
+     * @param queueCapacity 等待队列长度，0表示不排队直接扩容到最大线程数。大于0时队列满了才扩容，建议取小值。
+     *     线程和队列都满时调用方等待，直到有空位或到达截止时间
+     */
+    public static synchronized void configureBoundedPool(int coreSize, int maxSize, int queueCapacity) {
+        replaceExecutor(newBoundedPool(coreSize, maxSize, queueCapacity), ExecutorMode.BOUNDED_POOL);
+    }
+
+    /**
+     * 使用自定义的共享线程池，由调用方负责关闭
+     */
+    public static synchronized void setExecutor(ExecutorService executor) {
+        replaceExecutor(executor, ExecutorMode.CUSTOM);
+    }
+
+    public static ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
 
     /**
      * 并行执行任务列表，并收集返回结果
@@ -30,36 +109,377 @@ public class ParallelCallableUtil {
      */
     public static HashMap<Callable, Object> runAndWaitForComplete(Integer taskTimeOutSecond,
                                                                   List<Callable> callableList) {
+        List<Callable<Object>> tasks = new ArrayList<>(callableList.size());
+        for (Callable<?> callable : callableList) {
+            tasks.add(callable::call);
+        }
+        ParallelResult<Object> result = runAndWaitForComplete(taskTimeOutSecond, tasks, sharedExecutor);
+        // 只保留执行成功的任务，以调用方传入的任务作为key，失败和超时的任务记录日志
         HashMap<Callable, Object> resultMap = new HashMap<>();
-        HashMap<Future, Callable> futureCallableMap = new LinkedHashMap<>();
-        ExecutorService executorService = Executors.newFixedThreadPool(callableList.size());
-        for (Callable callable : callableList) {
-            futureCallableMap.put(executorService.submit(callable), callable);
+        for (ParallelResult.TaskOutcome<Object> outcome : result.getOutcomes()) {
+            if (outcome.isSuccess()) {
+                resultMap.put(callableList.get(outcome.getIndex()), outcome.getValue());
+            } else if (outcome.getStatus() == ParallelResult.Status.FAILURE) {
+                log.error("task {} failed", outcome.getIndex(), outcome.getError());
+            } else {
+                log.warn("task {} {}", outcome.getIndex(), outcome.getStatus());
+            }
+        }
+        return resultMap;
+    }
+
+    /**
+     * 在指定线程池上并行执行任务列表，按任务下标返回每个任务的结果
+     *
+     * @param taskTimeOutSecond 整体任务超时时间，不是单个
+     * @param callableList      任务列表
+     * @param executorService   执行任务的线程池，调用结束后不会关闭
+     * @return com.wjy.wutool.task.ParallelResult<T> 按任务下标记录的执行结果
+     */
+    public static <T> ParallelResult<T> runAndWaitForComplete(Integer taskTimeOutSecond,
+                                                              List<? extends Callable<T>> callableList,
+                                                              ExecutorService executorService) {
+        return runAll(taskTimeOutSecond, TimeUnit.SECONDS, callableList, executorService);
+    }
+
+    /**
+     * 并行执行任务列表，按完成先后收集结果。所有任务共用一个截止时间，先完成的任务不会因为前面的慢任务而丢失，
+     * 单个任务异常也不影响其他任务的结果，截止时仍未完成的任务会被取消
+     *
+     * @param timeout  整体超时时间
+     * @param unit     时间单位
+     * @param tasks    任务列表
+     * @return com.wjy.wutool.task.ParallelResult<T> 按任务下标记录的执行结果
+     */
+    public static <T> ParallelResult<T> runAll(long timeout, TimeUnit unit, List<? extends Callable<T>> tasks) {
+        return runAll(timeout, unit, tasks, sharedExecutor);
+    }
+
+    /**
+     * 在指定线程池上并行执行任务列表，按完成先后收集结果
+     *
+     * @param executorService 执行任务的线程池，调用结束后不会关闭
+     */
+    public static <T> ParallelResult<T> runAll(long timeout, TimeUnit unit, List<? extends Callable<T>> tasks,
+                                               ExecutorService executorService) {
+        return execute(tasks, executorService, timeout, unit, 0, -1L);
+    }
+
+    /**
+     * 对冲请求。先执行第一个任务，超过对冲延迟仍未成功（或已失败）时再启动下一个，取最先成功的结果，其余任务取消
+     * 适合对同一厂商接口重复调用或调用多个备选厂商，降低长尾延迟，对冲延迟一般取p95耗时
+     *
+     * @param hedgeDelay 启动下一个任务前的等待时间
+     * @param delayUnit 对冲延迟的时间单位
+     * @param timeout 整体超时时间
+     * @param unit 时间单位
+     * @param attempts 按启动顺序排列的候选任务，可以是同一个任务重复多次
+     * @return com.wjy.wutool.task.ParallelResult<T> 执行结果，getWinnerIndex()为胜出的任务下标，没有成功时为-1
+     */
+    public static <T> ParallelResult<T> runHedged(long hedgeDelay, TimeUnit delayUnit, long timeout, TimeUnit unit,
+                                                  List<? extends Callable<T>> attempts) {
+        return runHedged(hedgeDelay, delayUnit, timeout, unit, attempts, sharedExecutor);
+    }
+
+    /**
+     * 在指定线程池上执行对冲请求
+     *
+     * @param executorService 执行任务的线程池，调用结束后不会关闭
+     */
+    public static <T> ParallelResult<T> runHedged(long hedgeDelay, TimeUnit delayUnit, long timeout, TimeUnit unit,
+                                                  List<? extends Callable<T>> attempts,
+                                                  ExecutorService executorService) {
+        return execute(attempts, executorService, timeout, unit, 1, Math.max(0L, delayUnit.toNanos(hedgeDelay)));
+    }
+
+    /**
+     * 法定数模式。同时执行全部任务，有quorum个成功后立即返回并取消其余任务，失败数多到不可能达成时也提前返回
+     *
+     * @param quorum 需要成功的任务数
+     * @param timeout 整体超时时间
+     * @param unit 时间单位
+     * @param tasks 任务列表
+     * @return com.wjy.wutool.task.ParallelResult<T> 执行结果，getSuccessOrder()为按完成先后排列的成功任务下标
+     */
+    public static <T> ParallelResult<T> runQuorum(int quorum, long timeout, TimeUnit unit,
+                                                  List<? extends Callable<T>> tasks) {
+        return runQuorum(quorum, timeout, unit, tasks, sharedExecutor);
+    }
+
+    /**
+     * 在指定线程池上执行法定数模式
+     *
+     * @param executorService 执行任务的线程池，调用结束后不会关闭
+     */
+    public static <T> ParallelResult<T> runQuorum(int quorum, long timeout, TimeUnit unit,
+                                                  List<? extends Callable<T>> tasks, ExecutorService executorService) {
+        if (quorum < 1 || quorum > tasks.size()) {
+            throw new IllegalArgumentException("quorum out of range: " + quorum);
         }
-        executorService.shutdown();
+        return execute(tasks, executorService, timeout, unit, quorum, -1L);
+    }
+
+    /**
+     * 执行任务并按完成先后收集结果
+     *
+     * @param required 需要成功的任务数，达到后取消其余任务，0表示收集全部
+     * @param hedgeDelayNanos 对冲延迟，小于0表示一次启动全部任务
+     */
+    private static <T> ParallelResult<T> execute(List<? extends Callable<T>> tasks, ExecutorService executorService,
+                                                 long timeout, TimeUnit unit, int required, long hedgeDelayNanos) {
+        long startNanos = System.nanoTime();
+        long timeoutNanos = Math.max(unit.toNanos(timeout), TimeUnit.MILLISECONDS.toNanos(MIN_TASK_TIME_OUT_MS));
+        long deadline = startNanos + timeoutNanos;
+        int taskCount = tasks.size();
+        boolean hedged = hedgeDelayNanos >= 0;
+        ParallelResult<T> result = new ParallelResult<>(taskCount);
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Future<T>, Integer> futureIndexMap = new IdentityHashMap<>(taskCount);
+        int launched = 0;
+        int successCount = 0;
+        int failureCount = 0;
+        boolean timedOut = false;
         try {
-            // 遍历任务，收集结果
-            Long remainTimeMs = taskTimeOutSecond * 1000L;
-            for (Map.Entry<Future, Callable> entry : futureCallableMap.entrySet()) {
-                // 计算本次任务耗时，并刷新总耗时。保证所有任务在期望的指定时间内完成（超时则自动终止退出）
-                Long startTime = System.currentTimeMillis();
-                // 阻塞等待结果
-                // 设置最小超时时间，避免任务列表中有长时长的任务占用大部分时间导致其他任务因超时而取不到结果（实际已经完成）
-                Object result = entry.getKey().get(Math.max(remainTimeMs, MIN_TASK_TIME_OUT_MS), TimeUnit.MILLISECONDS);
-                Long costTime = System.currentTimeMillis() - startTime;
-                remainTimeMs -= costTime;
-                resultMap.put(entry.getValue(), result);
+            launched = launch(tasks, hedged ? 1 : taskCount, launched, executorService, completionService,
+                futureIndexMap, result, startNanos, deadline);
+            long nextLaunchAt = startNanos + hedgeDelayNanos;
+            while (true) {
+                failureCount = launched - futureIndexMap.size() - successCount;
+                if (required > 0 && successCount >= required) {
+                    break;
+                }
+                if (required > 0 && failureCount > taskCount - required) {
+                    // 剩余任务全部成功也达不到要求
+                    break;
+                }
+                boolean canLaunch = hedged && launched < taskCount;
+                if (futureIndexMap.isEmpty()) {
+                    if (!canLaunch) {
+                        break;
+                    }
+                    // 已启动的都失败了，立即启动下一个
+                    launched = launch(tasks, 1, launched, executorService, completionService, futureIndexMap, result,
+                        startNanos, deadline);
+                    nextLaunchAt = System.nanoTime() + hedgeDelayNanos;
+                    continue;
+                }
+                long now = System.nanoTime();
+                long waitUntil = canLaunch ? Math.min(deadline, nextLaunchAt) : deadline;
+                // 按完成先后收集，截止时间到了之后只收已经完成的
+                Future<T> future = waitUntil > now ? completionService.poll(waitUntil - now, TimeUnit.NANOSECONDS)
+                    : completionService.poll();
+                if (future == null) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        timedOut = true;
+                        break;
+                    }
+                    // 到了对冲时间，启动下一个
+                    launched = launch(tasks, 1, launched, executorService, completionService, futureIndexMap, result,
+                        startNanos, deadline);
+                    nextLaunchAt = System.nanoTime() + hedgeDelayNanos;
+                    continue;
+                }
+                int index = futureIndexMap.remove(future);
+                ParallelResult.TaskOutcome<T> outcome = outcomeOf(index, future, startNanos);
+                result.set(index, outcome);
+                if (outcome.isSuccess()) {
+                    successCount++;
+                    result.addSuccessOrder(index);
+                }
             }
-        } catch (Throwable e) {
-            log.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("interrupted while waiting parallel tasks");
         } finally {
-            // 取消未完成任务
-            for (Future future : futureCallableMap.keySet()) {
-                if (!future.isDone()) {
-                    future.cancel(true);
+            // 取消未完成任务。只有到达截止时间才记为超时，调用线程被中断或已满足要求时记为取消
+            cancelAll(futureIndexMap.keySet());
+            ParallelResult.Status status = timedOut ? ParallelResult.Status.TIMEOUT : ParallelResult.Status.CANCELLED;
+            for (Integer index : futureIndexMap.values()) {
+                result.set(index, new ParallelResult.TaskOutcome<>(index, status, null, null, elapsedMs(startNanos)));
+            }
+            // 对冲模式下还没启动的任务
+            for (int i = launched; i < taskCount; i++) {
+                result.set(i, new ParallelResult.TaskOutcome<>(i, ParallelResult.Status.CANCELLED, null, null,
+                    elapsedMs(startNanos)));
+            }
+            result.freeze();
+        }
+        return result;
+    }
+
+    /**
+     * 从下标from开始启动count个任务，提交失败的任务直接记为失败。
+     * 自带的有界线程池满了时在截止时间内等待空位，截止前等不到的任务记为超时，不再提交。
+     * 自定义线程池用CallerRunsPolicy等方式把任务放回调用线程执行时，任务直接失败，
+     * 否则会阻塞调用线程，超时、对冲延迟和取消都失效
+     *
+     * @return int 已启动（含提交失败和等待超时）的任务数
+     */
+    private static <T> int launch(List<? extends Callable<T>> tasks, int count, int from,
+                                  ExecutorService executorService, CompletionService<T> completionService,
+                                  Map<Future<T>, Integer> futureIndexMap, ParallelResult<T> result, long startNanos,
+                                  long deadline) throws InterruptedException {
+        Thread caller = Thread.currentThread();
+        int end = Math.min(tasks.size(), from + count);
+        for (int i = from; i < end; i++) {
+            if (executorService instanceof BoundedPool
+                && !((BoundedPool) executorService).acquire(deadline - System.nanoTime())) {
+                for (int j = i; j < end; j++) {
+                    result.set(j, new ParallelResult.TaskOutcome<>(j, ParallelResult.Status.TIMEOUT, null, null,
+                        elapsedMs(startNanos)));
                 }
+                return end;
+            }
+            Callable<T> task = tasks.get(i);
+            try {
+                futureIndexMap.put(completionService.submit(() -> {
+                    if (Thread.currentThread() == caller) {
+                        throw new RejectedExecutionException("executor ran task on caller thread");
+                    }
+                    return task.call();
+                }), i);
+            } catch (RejectedExecutionException e) {
+                result.set(i, new ParallelResult.TaskOutcome<>(i, ParallelResult.Status.FAILURE, null, e,
+                    elapsedMs(startNanos)));
             }
         }
-        return resultMap;
+        return end;
+    }
+
+    private static <T> ParallelResult.TaskOutcome<T> outcomeOf(int index, Future<T> future, long startNanos) {
+        try {
+            return new ParallelResult.TaskOutcome<>(index, ParallelResult.Status.SUCCESS, future.get(), null,
+                elapsedMs(startNanos));
+        } catch (ExecutionException e) {
+            return new ParallelResult.TaskOutcome<>(index, ParallelResult.Status.FAILURE, null, e.getCause(),
+                elapsedMs(startNanos));
+        } catch (CancellationException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return new ParallelResult.TaskOutcome<>(index, ParallelResult.Status.FAILURE, null, e,
+                elapsedMs(startNanos));
+        }
+    }
+
+    private static void cancelAll(Collection<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (!future.isDone()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static void replaceExecutor(ExecutorService executor, ExecutorMode mode) {
+        ExecutorService old = sharedExecutor;
+        sharedExecutor = executor;
+        ExecutorMode oldMode = executorMode;
+        executorMode = mode;
+        // 只关闭自己创建的线程池
+        if (old != executor && (oldMode == ExecutorMode.BOUNDED_POOL || oldMode == ExecutorMode.VIRTUAL_THREAD)) {
+            old.shutdown();
+        }
+    }
+
+    private static ExecutorService newBoundedPool(int coreSize, int maxSize, int queueCapacity) {
+        BoundedPool executor = new BoundedPool(coreSize, Math.max(coreSize, maxSize), queueCapacity);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** 通过反射创建虚拟线程执行器，工程按java 8编译，JDK 21以下返回null */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 有界线程池。只在队列满时扩容，默认直接移交不排队，线程先扩到最大
+     * 提交前先用acquire占一个空位（最大线程数加队列长度），占不到时调用方等待，任务执行完才释放，提交不会被拒绝
+     */
+    private static class BoundedPool extends ThreadPoolExecutor {
+
+        private static final AtomicInteger POOL_INDEX = new AtomicInteger();
+
+        private final Semaphore slots;
+
+        private BoundedPool(int coreSize, int maxSize, int queueCapacity) {
+            super(coreSize, maxSize, 60, TimeUnit.SECONDS,
+                queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(),
+                newThreadFactory(), BoundedPool::waitForWorker);
+            this.slots = new Semaphore(maxSize + Math.max(0, queueCapacity));
+        }
+
+        /**
+         * 等待空位
+         *
+         * @param timeoutNanos 最多等待时间
+         * @return boolean 是否占到空位，占到后必须提交任务，执行完自动释放
+         */
+        private boolean acquire(long timeoutNanos) throws InterruptedException {
+            return slots.tryAcquire(Math.max(0L, timeoutNanos), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            try {
+                super.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        slots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                slots.release();
+                throw e;
+            }
+        }
+
+        private static ThreadFactory newThreadFactory() {
+            int poolIndex = POOL_INDEX.incrementAndGet();
+            AtomicInteger threadIndex = new AtomicInteger();
+            return r -> {
+                Thread t = new Thread(r, "parallel-callable-" + poolIndex + "-" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+        }
+
+        /**
+         * 空位在任务执行完、线程回去取下一个任务之前释放，这个间隙里提交可能被拒绝，此时等空闲线程取走即可
+         */
+        private static void waitForWorker(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("parallel callable pool is shutdown");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting worker", e);
+            }
+        }
+    }
+
+    /**
+     * 共享线程池类型
+     */
+    public enum ExecutorMode {
+        /** 有界线程池，线程和队列都满时调用方在截止时间内等待 */
+        BOUNDED_POOL,
+        /** ForkJoinPool公共池 */
+        FORK_JOIN_POOL,
+        /** 虚拟线程，每个任务一个虚拟线程，JDK 21及以上可用 */
+        VIRTUAL_THREAD,
+        /** 通过setExecutor传入的线程池 */
+        CUSTOM
     }
 }
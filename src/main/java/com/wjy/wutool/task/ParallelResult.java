@@ -0,0 +1,172 @@
+package com.wjy.wutool.task;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 并行任务执行结果。按任务提交顺序的下标记录每个任务的成功、失败、超时或取消，以及成功任务的完成先后
+ * <p>
+ * 执行过程中只由调用线程填充，不是线程安全的；返回给调用方前冻结为只读
+ *
+ * @author weijiayu
+ * @date 2026/10/17 19:30
+ */
+public class ParallelResult<T> {
+
+    private List<TaskOutcome<T>> outcomes;
+    /** 按完成先后排列的成功任务下标 */
+    private List<Integer> successOrder = new ArrayList<>();
+
+    ParallelResult(int taskCount) {
+        this.outcomes = new ArrayList<>(Collections.nCopies(taskCount, null));
+    }
+
+    void set(int index, TaskOutcome<T> outcome) {
+        outcomes.set(index, outcome);
+    }
+
+    void addSuccessOrder(int index) {
+        successOrder.add(index);
+    }
+
+    /** 执行结束后冻结，之后不可再修改 */
+    void freeze() {
+        outcomes = Collections.unmodifiableList(outcomes);
+        successOrder = Collections.unmodifiableList(successOrder);
+    }
+
+    /** 任务个数 */
+    public int size() {
+        return outcomes.size();
+    }
+
+    /**
+     * 取单个任务的结果
+     *
+     * @param index 任务在列表中的下标
+     */
+    public TaskOutcome<T> get(int index) {
+        return outcomes.get(index);
+    }
+
+    public List<TaskOutcome<T>> getOutcomes() {
+        return outcomes;
+    }
+
+    public List<TaskOutcome<T>> getSuccesses() {
+        return filter(Status.SUCCESS);
+    }
+
+    public List<TaskOutcome<T>> getFailures() {
+        return filter(Status.FAILURE);
+    }
+
+    public List<TaskOutcome<T>> getTimeouts() {
+        return filter(Status.TIMEOUT);
+    }
+
+    public List<TaskOutcome<T>> getCancelled() {
+        return filter(Status.CANCELLED);
+    }
+
+    /**
+     * 按完成先后排列的成功任务下标
+     */
+    public List<Integer> getSuccessOrder() {
+        return successOrder;
+    }
+
+    /**
+     * 最先成功的任务下标，对冲模式下即胜出的任务
+     *
+     * @return int 没有成功的任务时返回-1
+     */
+    public int getWinnerIndex() {
+        return successOrder.isEmpty() ? -1 : successOrder.get(0);
+    }
+
+    /**
+     * 最先成功的任务结果
+     *
+     * @return com.wjy.wutool.task.ParallelResult.TaskOutcome<T> 没有成功的任务时返回null
+     */
+    public TaskOutcome<T> getWinner() {
+        return successOrder.isEmpty() ? null : outcomes.get(successOrder.get(0));
+    }
+
+    public boolean isAllSuccess() {
+        for (TaskOutcome<T> outcome : outcomes) {
+            if (outcome.status != Status.SUCCESS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按任务顺序取返回值，未成功的任务为null
+     */
+    public List<T> getValues() {
+        List<T> values = new ArrayList<>(outcomes.size());
+        for (TaskOutcome<T> outcome : outcomes) {
+            values.add(outcome.value);
+        }
+        return values;
+    }
+
+    private List<TaskOutcome<T>> filter(Status status) {
+        List<TaskOutcome<T>> list = new ArrayList<>();
+        for (TaskOutcome<T> outcome : outcomes) {
+            if (outcome.status == status) {
+                list.add(outcome);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 任务状态
+     */
+    public enum Status {
+        /** 执行成功 */
+        SUCCESS,
+        /** 执行抛异常或提交失败 */
+        FAILURE,
+        /** 超时未完成，已取消 */
+        TIMEOUT,
+        /** 其他任务已满足要求或调用线程被中断，未完成或未启动的任务被取消 */
+        CANCELLED
+    }
+
+    /**
+     * 单个任务的执行结果
+     */
+    @Getter
+    @ToString
+    public static class TaskOutcome<T> {
+
+        /** 任务在列表中的下标 */
+        private final int index;
+        private final Status status;
+        private final T value;
+        private final Throwable error;
+        /** 从开始执行整批任务到拿到该任务结果的耗时 */
+        private final long elapsedMs;
+
+        TaskOutcome(int index, Status status, T value, Throwable error, long elapsedMs) {
+            this.index = index;
+            this.status = status;
+            this.value = value;
+            this.error = error;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.SUCCESS;
+        }
+    }
+}
@@ -1,19 +1,31 @@
 package com.wjy.wutool.task;
 
+import lombok.Getter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.ListUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 
 /**
  * 针对大in查询，做拆分和合并。支持线程加速，需要在合并函数自行处理线程冲突
+ * <p>
+ * 数据量大时可用executeStreaming流式处理：同时执行的分片数有上限，每个分片查完后立即在调用线程交给消费函数处理，
+ * 处理完才提交新的分片，内存中最多只有上限个分片的结果。超时未完成的分片会在返回的报告里列出，不会静默丢弃。
+ * 查询耗时随数据量变化大时，可设置AdaptivePartitionSizer按实测耗时自动调整分片大小和并行度
  * 
  * @author weijiayu
  * @date 2024/8/26 9:57
@@ -25,11 +37,14 @@ public class PartitionSelectJob<J, K> {
     private SelectInFunction<J> selectInFunc;
     /** 查询结果合并 */
     private BiConsumer<List<J>, ConcurrentHashMap<String, K>> combineFunc;
-    private ConcurrentHashMap<String, K> rsDataMap = new ConcurrentHashMap<>();
 
     private Integer maxInValue = 1000;
     private Integer poolSize = 1;
     private Integer poolWaitSec = 2;
+    /** 流式处理时同时执行的分片数上限，默认为线程数的2倍 */
+    private Integer maxInFlight;
+    /** 自适应分片，设置后流式处理时按实测耗时动态调整分片大小和并行度，忽略maxInValue、poolSize和maxInFlight */
+    private AdaptivePartitionSizer adaptiveSizer;
 
     public PartitionSelectJob(SelectInFunction<J> selectInFunc,
                               BiConsumer<List<J>, ConcurrentHashMap<String, K>> combineFunc) {
@@ -47,12 +62,22 @@ public class PartitionSelectJob<J, K> {
         this.poolWaitSec = poolWaitSec;
     }
 
+    public void setMaxInFlight(Integer maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void setAdaptiveSizer(AdaptivePartitionSizer adaptiveSizer) {
+        this.adaptiveSizer = adaptiveSizer;
+    }
+
     public List<K> execute(List<String> inDataList, Object... sqlParams) {
         List<K> rs = new ArrayList<>();
         try {
             if (CollectionUtils.isEmpty(inDataList)) {
                 return rs;
             }
+            // 每次执行单独合并，避免多次调用或并发调用的结果互相混杂
+            ConcurrentHashMap<String, K> rsDataMap = new ConcurrentHashMap<>();
             ExecutorService executorService = Executors.newFixedThreadPool(poolSize);
             // 对in条件数据拆分
             for (List<String> subInDataList : ListUtils.partition(inDataList, maxInValue)) {
@@ -77,6 +102,122 @@ public class PartitionSelectJob<J, K> {
         return rs;
     }
 
+    /**
+     * 流式执行，整体超时时间为poolWaitSec
+     *
+     * @param inDataList in条件数据
+     * @param consumer 分片结果消费函数，在调用线程上按完成先后执行
+     * @param sqlParams 其他sql参数
+     * @return com.wjy.wutool.task.PartitionSelectJob.StreamReport 执行报告
+     */
+    public StreamReport executeStreaming(List<String> inDataList, PartitionConsumer<J> consumer, Object... sqlParams) {
+        return executeStreaming(inDataList, poolWaitSec, TimeUnit.SECONDS, consumer, sqlParams);
+    }
+
+    /**
+     * 流式执行。同时执行的分片数不超过maxInFlight，分片结果交给消费函数后即释放，超时未完成的分片取消并记录到报告
+     *
+     * @param inDataList in条件数据
+     * @param timeout 整体超时时间
+     * @param unit 时间单位
+     * @param consumer 分片结果消费函数，在调用线程上按完成先后执行，无需处理线程冲突
+     * @param sqlParams 其他sql参数
+     * @return com.wjy.wutool.task.PartitionSelectJob.StreamReport 执行报告
+     */
+    public StreamReport executeStreaming(List<String> inDataList, long timeout, TimeUnit unit,
+                                         PartitionConsumer<J> consumer, Object... sqlParams) {
+        StreamReport report = new StreamReport();
+        if (CollectionUtils.isEmpty(inDataList)) {
+            return report;
+        }
+        AdaptivePartitionSizer sizer = adaptiveSizer;
+        int reservedParams = sqlParams == null ? 0 : sqlParams.length;
+        int threads = sizer != null ? sizer.getMaxParallelism() : poolSize;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        BlockingQueue<PartitionDone<J>> doneQueue = new LinkedBlockingQueue<>();
+        Map<Integer, Future<?>> inFlight = new HashMap<>();
+        // 按需切分，自适应模式下每个分片的大小取决于之前分片的实测耗时
+        int offset = 0;
+        int next = 0;
+        try {
+            while (offset < inDataList.size() || !inFlight.isEmpty()) {
+                int window = sizer != null ? sizer.getParallelism()
+                    : maxInFlight != null ? maxInFlight : poolSize * 2;
+                // 窗口内有空位就继续提交，过了截止时间不再提交新分片，避免调用方放弃后还给数据库加压
+                while (offset < inDataList.size() && inFlight.size() < window && deadline - System.nanoTime() > 0) {
+                    int size = partitionSize(sizer, reservedParams);
+                    int index = next++;
+                    List<String> subInDataList = inDataList.subList(offset, Math.min(offset + size, inDataList.size()));
+                    offset += subInDataList.size();
+                    inFlight.put(index, executorService.submit(() -> {
+                        PartitionDone<J> done = new PartitionDone<>(index, subInDataList);
+                        long start = System.nanoTime();
+                        try {
+                            done.rows = multipleApply(selectInFunc, subInDataList, sqlParams);
+                        } catch (Throwable e) {
+                            done.error = e;
+                        }
+                        done.latencyNanos = System.nanoTime() - start;
+                        doneQueue.add(done);
+                    }));
+                }
+                long remainNanos = deadline - System.nanoTime();
+                // 截止时间到了之后只收已经完成的
+                PartitionDone<J> done = remainNanos > 0 ? doneQueue.poll(remainNanos, TimeUnit.NANOSECONDS)
+                    : doneQueue.poll();
+                if (done == null) {
+                    break;
+                }
+                inFlight.remove(done.index);
+                if (done.error != null) {
+                    log.error("partition {} select failed", done.index, done.error);
+                    report.failedPartitions.add(done.index);
+                    if (sizer != null) {
+                        // 查询失败是最明显的过载信号，同样参与调整
+                        sizer.onFailure(done.inDataList.size());
+                    }
+                    continue;
+                }
+                if (sizer != null) {
+                    sizer.record(done.inDataList.size(), done.latencyNanos, done.rows == null ? 0 : done.rows.size());
+                }
+                try {
+                    consumer.accept(done.index, done.inDataList, done.rows);
+                    report.succeeded++;
+                    report.rowCount += done.rows == null ? 0 : done.rows.size();
+                } catch (Throwable e) {
+                    log.error("partition {} consume failed", done.index, e);
+                    report.failedPartitions.add(done.index);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("partition select interrupted");
+        } finally {
+            executorService.shutdownNow();
+            // 执行中和未提交的分片都算超时，未提交的数据按当前分片大小计数
+            report.timedOutPartitions.addAll(inFlight.keySet());
+            while (offset < inDataList.size()) {
+                offset += partitionSize(sizer, reservedParams);
+                report.timedOutPartitions.add(next++);
+            }
+            report.totalPartitions = next;
+            Collections.sort(report.timedOutPartitions);
+            if (!report.timedOutPartitions.isEmpty()) {
+                log.warn("partition select timeout, {} of {} partitions not finished", report.timedOutPartitions.size(),
+                    next);
+            }
+        }
+        return report;
+    }
+
+    private int partitionSize(AdaptivePartitionSizer sizer, int reservedParams) {
+        int size = sizer != null ? sizer.nextPartitionSize() : maxInValue;
+        // 不超过数据库绑定参数上限
+        return Math.max(1, Math.min(size, AdaptivePartitionSizer.POSTGRES_MAX_BIND_PARAMS - reservedParams));
+    }
+
     public List<J> multipleApplyExt(SelectInFunction<J> selectInFunc, List<String> inDataList, Object... sqlParams) {
         return new ArrayList<>();
     }
@@ -121,4 +262,56 @@ public class PartitionSelectJob<J, K> {
          */
         List<T> apply(List<String> inDataList, Object... sqlParams);
     }
+
+    /**
+     * 流式执行时的分片结果消费函数
+     */
+    @FunctionalInterface
+    public interface PartitionConsumer<T> {
+
+        /**
+         * @param partitionIndex 分片序号，从0开始
+         * @param inDataList 该分片的in条件数据
+         * @param rows 该分片的查询结果
+         */
+        void accept(int partitionIndex, List<String> inDataList, List<T> rows);
+    }
+
+    /**
+     * 流式执行报告
+     */
+    @Getter
+    @ToString
+    public static class StreamReport {
+
+        private int totalPartitions;
+        private int succeeded;
+        private long rowCount;
+        /** 查询或消费失败的分片序号 */
+        private final List<Integer> failedPartitions = new ArrayList<>();
+        /** 超时未完成的分片序号，包括已取消和未提交的 */
+        private final List<Integer> timedOutPartitions = new ArrayList<>();
+
+        private StreamReport() {
+        }
+
+        /** 所有分片都成功处理 */
+        public boolean isComplete() {
+            return succeeded == totalPartitions;
+        }
+    }
+
+    private static final class PartitionDone<T> {
+
+        private final int index;
+        private final List<String> inDataList;
+        private List<T> rows;
+        private Throwable error;
+        private long latencyNanos;
+
+        private PartitionDone(int index, List<String> inDataList) {
+            this.index = index;
+            this.inDataList = inDataList;
+        }
+    }
 }
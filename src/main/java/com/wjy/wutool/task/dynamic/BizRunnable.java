@@ -3,10 +3,16 @@ package com.wjy.wutool.task.dynamic;
 import cn.hutool.extra.spring.SpringUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 /**
  * 业务线程
+ * <p>
+ * bean和方法只解析一次，绑定为参数已填好的MethodHandle，每次执行直接invokeExact，不再走getBean和反射。
+ * 按单例bean处理，prototype的bean也只取一次
  *
  * @author weijiayu
  * @date 2024/10/9 17:52
@@ -14,10 +20,14 @@ import java.lang.reflect.Method;
 @Slf4j
 public class BizRunnable<T> implements Runnable {
 
+    private static final MethodType RUN_TYPE = MethodType.methodType(void.class);
+
     private String beanName;
     private String methodName;
     private Class<?>[] classes;
     private Object[] params;
+    /** 绑定了bean和参数的无参调用 */
+    private volatile MethodHandle invoker;
 
     public BizRunnable(String beanName, String methodName, Class<?>[] classes, Object[] params) {
         this.beanName = beanName;
@@ -26,15 +36,67 @@ public class BizRunnable<T> implements Runnable {
         this.params = params;
     }
 
+    /**
+     * @param invoker 由bindParams生成的调用
+     */
+    public BizRunnable(MethodHandle invoker) {
+        this.invoker = invoker;
+    }
+
     @Override
     public void run() {
         try {
-            // 也可以直接硬编码，不用反射
-            T service = SpringUtil.getBean(beanName);
-            Method method = service.getClass().getMethod(methodName, classes);
-            method.invoke(service, params);
+            MethodHandle handle = invoker;
+            if (handle == null) {
+                // 按名称构造的，第一次执行时解析
+                handle = bindParams(resolveMethod(beanName, methodName, classes), params);
+                invoker = handle;
+            }
+            handle.invokeExact();
         } catch (Throwable e) {
             log.error(e.getMessage(), e);
         }
     }
+
+    /**
+     * 解析bean和方法，返回已绑定bean的方法调用
+     *
+     * @param beanName bean名称
+     * @param methodName 方法名
+     * @param classes 方法参数类型
+     * @return java.lang.invoke.MethodHandle
+     * @throws ReflectiveOperationException 方法不存在或无法访问
+     */
+    public static MethodHandle resolveMethod(String beanName, String methodName, Class<?>[] classes)
+        throws ReflectiveOperationException {
+        Object service = SpringUtil.getBean(beanName);
+        if (service == null) {
+            throw new IllegalArgumentException("bean not found: " + beanName);
+        }
+        Method method = service.getClass().getMethod(methodName, classes == null ? new Class<?>[0] : classes);
+        try {
+            // 方法是public，但所在类可能不是
+            method.setAccessible(true);
+        } catch (RuntimeException e) {
+            log.debug("set accessible failed: {}", e.getMessage());
+        }
+        return MethodHandles.lookup().unreflect(method).bindTo(service);
+    }
+
+    /**
+     * 填入参数，返回无参无返回值的调用
+     *
+     * @param method resolveMethod返回的方法调用
+     * @param params 方法参数，个数和类型需与方法一致
+     * @return java.lang.invoke.MethodHandle
+     */
+    public static MethodHandle bindParams(MethodHandle method, Object[] params) {
+        int count = method.type().parameterCount();
+        int len = params == null ? 0 : params.length;
+        if (count != len) {
+            throw new IllegalArgumentException("method needs " + count + " params, but got " + len);
+        }
+        MethodHandle handle = len == 0 ? method : MethodHandles.insertArguments(method, 0, params);
+        return handle.asType(RUN_TYPE);
+    }
 }
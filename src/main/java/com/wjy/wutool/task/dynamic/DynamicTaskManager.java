@@ -6,6 +6,7 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.scheduling.config.CronTask;
 import org.springframework.scheduling.support.CronExpression;
 
+import java.lang.invoke.MethodHandle;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
@@ -27,6 +28,8 @@ public class DynamicTaskManager<T> implements DisposableBean {
     private String beanName;
     private String methodName;
     private Class<?>[] classes;
+    /** 已绑定bean的方法调用，第一次增加任务时解析，之后所有任务共用 */
+    private volatile MethodHandle methodHandle;
 
     public DynamicTaskManager(String beanName, String methodName, Class<?>[] classes,
         ThreadPoolTaskScheduler taskScheduler) {
@@ -50,17 +53,25 @@ public class DynamicTaskManager<T> implements DisposableBean {
         taskScheduler.initialize();
     }
 
-    /** 增加或更新任务 */
+    /** 增加或更新任务。bean或方法不存在、参数不匹配时返回false */
     public boolean addOrUpdTask(String id, String cronExpression, Object[] params) {
         if (!CronExpression.isValidExpression(cronExpression)) {
             return false;
         }
+        // 在注册时解析和绑定参数，有问题直接返回，不等到每次执行时才报错
+        MethodHandle invoker;
+        try {
+            invoker = BizRunnable.bindParams(resolveMethod(), params);
+        } catch (Throwable e) {
+            log.error("task {} bind {}.{} failed: {}", id, beanName, methodName, e.getMessage(), e);
+            return false;
+        }
         ScheduledFuture future = scheduledFutureMap.get(id);
         // 原来如果有任务，先终止旧的
         if (future != null && !future.cancel(true)) {
             return false;
         }
-        CronTask cronTask = new CronTask(new BizRunnable<T>(beanName, methodName, classes, params), cronExpression);
+        CronTask cronTask = new CronTask(new BizRunnable<T>(invoker), cronExpression);
         future = taskScheduler.schedule(cronTask.getRunnable(), cronTask.getTrigger());
         scheduledFutureMap.put(id, future);
         return true;
@@ -79,6 +90,15 @@ public class DynamicTaskManager<T> implements DisposableBean {
         }
     }
 
+    private MethodHandle resolveMethod() throws ReflectiveOperationException {
+        MethodHandle handle = methodHandle;
+        if (handle == null) {
+            handle = BizRunnable.resolveMethod(beanName, methodName, classes);
+            methodHandle = handle;
+        }
+        return handle;
+    }
+
     @Override
     public void destroy() throws Exception {
         // bean销毁时优雅关闭
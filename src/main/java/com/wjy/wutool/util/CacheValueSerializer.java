@@ -0,0 +1,29 @@
+package com.wjy.wutool.util;
+
+import cn.hutool.core.util.SerializeUtil;
+
+/**
+ * 缓存值序列化器。用于堆外存储、持久化快照等需要把缓存值转成字节的场景，可按需替换为更紧凑的实现
+ *
+ * @author weijiayu
+ * @date 2026/10/17 15:30
+ */
+public interface CacheValueSerializer {
+
+    /** 默认实现，基于jdk序列化，值需实现Serializable */
+    CacheValueSerializer JDK = new CacheValueSerializer() {
+        @Override
+        public byte[] serialize(Object value) {
+            return SerializeUtil.serialize(value);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return SerializeUtil.deserialize(bytes);
+        }
+    };
+
+    byte[] serialize(Object value);
+
+    Object deserialize(byte[] bytes);
+}
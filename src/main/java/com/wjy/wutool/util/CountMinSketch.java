@@ -0,0 +1,122 @@
+package com.wjy.wutool.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count-Min频率草图。固定内存估算key出现次数，只会高估不会低估
+ * 支持计数上限和按采样次数自动减半（衰减旧热度），可用于缓存准入判断、海量key限流计数等场景
+ *
+ * @author weijiayu
+ * @date 2026/10/17 11:05
+ */
+public class CountMinSketch {
+
+    private static final int[] SEEDS = {0x97cb3127, 0x0c4a7b9d, 0x6d2b79f5, 0x1b873593, 0x85ebca6b, 0xc2b2ae35};
+
+    private final AtomicIntegerArray table;
+    private final int depth;
+    private final int width;
+    private final int mask;
+    private final int maxCount;
+    /** 累计计数达到该值后整体减半，0表示不自动衰减 */
+    private final long resetSampleSize;
+    private final AtomicLong sampleCount = new AtomicLong();
+
+    /**
+     * @param width           每行计数器个数，会向上取整为2的幂
+     * @param depth           行数（哈希函数个数），最大6
+     * @param maxCount        单个计数器上限
+     * @param resetSampleSize 累计计数达到该值后整体减半，0表示不自动衰减
+     */
+    public CountMinSketch(int width, int depth, int maxCount, long resetSampleSize) {
+        int size = 1;
+        while (size < width) {
+            size <<= 1;
+        }
+        this.width = size;
+        this.mask = size - 1;
+        this.depth = Math.max(1, Math.min(depth, SEEDS.length));
+        this.maxCount = maxCount;
+        this.resetSampleSize = resetSampleSize;
+        this.table = new AtomicIntegerArray(this.width * this.depth);
+    }
+
+    /**
+     * 计数加一
+     *
+     * @param hash key的哈希值
+     * @return int 加一后的估算次数
+     */
+    public int increment(int hash) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int idx = indexOf(hash, i);
+            int count;
+            while (true) {
+                count = table.get(idx);
+                if (count >= maxCount) {
+                    break;
+                }
+                if (table.compareAndSet(idx, count, count + 1)) {
+                    count++;
+                    break;
+                }
+            }
+            min = Math.min(min, count);
+        }
+        if (resetSampleSize > 0) {
+            long samples = sampleCount.incrementAndGet();
+            // 只有把计数从达到阈值的值CAS回0的线程负责减半，避免并发写入时重复减半
+            if (samples >= resetSampleSize && sampleCount.compareAndSet(samples, 0)) {
+                halve();
+            }
+        }
+        return min;
+    }
+
+    /**
+     * 估算次数
+     *
+     * @param hash key的哈希值
+     * @return int 估算次数
+     */
+    public int estimate(int hash) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, table.get(indexOf(hash, i)));
+        }
+        return min;
+    }
+
+    /** 所有计数减半，保留相对热度 */
+    public void halve() {
+        for (int i = 0; i < table.length(); i++) {
+            int count;
+            do {
+                count = table.get(i);
+            } while (count > 0 && !table.compareAndSet(i, count, count >>> 1));
+        }
+    }
+
+    /** 清空计数 */
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0);
+        }
+        sampleCount.set(0);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    private int indexOf(int hash, int row) {
+        // 每行使用不同的奇数乘子，再做一次扰动，让高位参与取模
+        int h = hash * SEEDS[row];
+        h ^= h >>> 17;
+        h *= 0x9e3779b9;
+        h ^= h >>> 15;
+        return row * width + (h & mask);
+    }
+}
@@ -0,0 +1,73 @@
+package com.wjy.wutool.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于本地文件的号段来源。每个业务标识一个文件，保存已预留的最大值，单机部署或测试时代替数据库
+ * 预留时加文件锁并落盘后才返回，同一目录下的多个进程也不会拿到重叠的号段。
+ * 文件锁由整个进程持有，同一进程内的多个实例先按文件路径互斥，避免OverlappingFileLockException
+ *
+ * @author weijiayu
+ * @date 2026/10/17 18:45
+ */
+public class FileSegmentSource implements SegmentSource {
+
+    /** 进程内按计数文件互斥 */
+    private static final ConcurrentHashMap<Path, Object> FILE_MONITORS = new ConcurrentHashMap<>();
+
+    private final Path dir;
+
+    /**
+     * @param dir 计数文件所在目录，不存在时自动创建
+     */
+    public FileSegmentSource(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public long reserve(String bizTag, int step) {
+        Path file = dir.resolve(bizTag + ".seg").toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(dir);
+            synchronized (FILE_MONITORS.computeIfAbsent(file, k -> new Object())) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                    // 持有文件锁期间读写计数，其他进程在lock()上等待
+                    FileLock lock = channel.lock();
+                    try {
+                        return increase(channel, step);
+                    } finally {
+                        lock.release();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("reserve id segment failed, bizTag=" + bizTag, e);
+        }
+    }
+
+    private long increase(FileChannel channel, int step) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        long maxId = 0L;
+        if (channel.read(buffer, 0) == Long.BYTES) {
+            buffer.flip();
+            maxId = buffer.getLong();
+        }
+        long newMaxId = maxId + step;
+        buffer.clear();
+        buffer.putLong(newMaxId).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.force(false);
+        return newMaxId;
+    }
+}
@@ -0,0 +1,227 @@
+package com.wjy.wutool.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间轮定时器。单个工作线程驱动，O(1)添加定时任务，适合海量短任务的超时/过期场景
+ * 到期任务在工作线程内执行，任务本身需保证轻量，耗时操作请自行转交线程池
+ * 基于System.nanoTime()计时，不受系统时钟回拨或跳变影响
+ *
+ * @author weijiayu
+ * @date 2026/10/17 10:12
+ */
+@Slf4j
+public class HashedWheelTimer {
+
+    /** 单格时间跨度，单位纳秒 */
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    /** 新增任务先入队，由工作线程统一转移到格子里，格子本身无需加锁 */
+    private final Queue<Timeout> pendingQueue = new ConcurrentLinkedQueue<>();
+    /** 已取消的任务，由工作线程每格统一从格子里摘除，及时释放内存 */
+    private final Queue<Timeout> cancelledQueue = new ConcurrentLinkedQueue<>();
+    private final Thread workerThread;
+    /** 启动时的System.nanoTime()，任务截止时间都是相对它的纳秒数 */
+    private final long startTime;
+    private volatile boolean stopped = false;
+    /** 当前指针，只在工作线程内读写 */
+    private long tick = 0;
+
+    /**
+     * @param threadName    工作线程名称
+     * @param tickDuration  单格时间跨度
+     * @param unit          时间单位
+     * @param ticksPerWheel 一圈的格子数，会向上取整为2的幂
+     */
+    public HashedWheelTimer(String threadName, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), unit.toNanos(tickDuration));
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.workerThread = new Thread(new Worker(), threadName);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * 添加定时任务
+     *
+     * @param task  到期执行的任务
+     * @param delay 延迟时间
+     * @param unit  时间单位
+     * @return com.wjy.wutool.util.HashedWheelTimer.Timeout 任务句柄，可用于取消
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("timer already stopped");
+        }
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startTime + Math.max(0L, unit.toNanos(delay)));
+        pendingQueue.offer(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        stopped = true;
+        workerThread.interrupt();
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                long deadline = (tick + 1) * tickNanos;
+                long sleepNanos = deadline - (System.nanoTime() - startTime);
+                if (sleepNanos > 0) {
+                    try {
+                        // 向上取整到毫秒，避免提前醒来空转
+                        Thread.sleep((sleepNanos + 999_999) / 1_000_000);
+                    } catch (InterruptedException e) {
+                        if (stopped) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                transferPendingTimeouts();
+                removeCancelledTimeouts();
+                wheel[(int) (tick & mask)].expireTimeouts();
+                tick++;
+            }
+        }
+
+        private void transferPendingTimeouts() {
+            Timeout timeout;
+            while ((timeout = pendingQueue.poll()) != null) {
+                if (timeout.cancelled) {
+                    continue;
+                }
+                long calculated = timeout.deadline / tickNanos;
+                timeout.remainingRounds = (calculated - tick) / wheel.length;
+                // 已经过期的任务放到当前格，本轮直接执行
+                long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+
+        private void removeCancelledTimeouts() {
+            Timeout timeout;
+            while ((timeout = cancelledQueue.poll()) != null) {
+                // 还在pendingQueue里的任务没有格子，转移时会被跳过
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove(timeout);
+                }
+            }
+        }
+    }
+
+    /**
+     * 时间轮的一格。双向链表，取消的任务可O(1)摘除
+     */
+    private static class Bucket {
+
+        /** 只在工作线程内访问 */
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            } else {
+                head = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        private void expireTimeouts() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.cancelled) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * 定时任务句柄
+     */
+    public static class Timeout {
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        /** 截止时间，相对定时器启动时刻的纳秒数 */
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled = false;
+        /** 所在格子和链表指针，只在工作线程内访问 */
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /** 取消任务。由工作线程在下一格时从格子里摘除，不会等到指针转到所在格才释放 */
+        public void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            timer.cancelledQueue.offer(this);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void expire() {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.wjy.wutool.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 内存kv缓存指标绑定器。把KvCacheStats的计数注册到Micrometer，配合Spring Boot Actuator可直接在/actuator/metrics查看
+ * 指标在采集时才读取LongAdder，不增加缓存读写路径的开销
+ * <p>
+ * 用法示例：
+ * <pre>
+ * &#64;Bean
+ * public MeterBinder memoryTimedKvCacheMetrics() {
+ *     return new KvCacheMetricsBinder("memoryTimedKv", MemoryTimedKvCacheUtil.getStatsRecorder(),
+ *         MemoryTimedKvCacheUtil::size);
+ * }
+ * </pre>
+ *
+ * @author weijiayu
+ * @date 2026/10/17 14:52
+ */
+public class KvCacheMetricsBinder implements MeterBinder {
+
+    private final KvCacheStats stats;
+    private final LongSupplier sizeSupplier;
+    private final Iterable<Tag> tags;
+
+    /**
+     * @param cacheName    缓存名称，作为cache标签
+     * @param stats        统计记录器
+     * @param sizeSupplier 当前缓存条数
+     */
+    public KvCacheMetricsBinder(String cacheName, KvCacheStats stats, LongSupplier sizeSupplier) {
+        this.stats = stats;
+        this.sizeSupplier = sizeSupplier;
+        this.tags = Tags.of("cache", cacheName);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("wutool.cache.size", sizeSupplier, (s) -> s.getAsLong()).tags(tags)
+            .description("当前缓存条数").register(registry);
+        FunctionCounter.builder("wutool.cache.gets", stats, KvCacheStats::getHitCount).tags(tags).tag("result", "hit")
+            .description("缓存命中次数").register(registry);
+        FunctionCounter.builder("wutool.cache.gets", stats, KvCacheStats::getMissCount).tags(tags).tag("result", "miss")
+            .description("缓存未命中次数").register(registry);
+        FunctionCounter.builder("wutool.cache.evictions", stats, KvCacheStats::getEvictionCount).tags(tags)
+            .description("容量淘汰次数").register(registry);
+        FunctionCounter.builder("wutool.cache.expires", stats, KvCacheStats::getExpireCount).tags(tags)
+            .description("过期删除次数").register(registry);
+        Gauge.builder("wutool.cache.expire.lag", stats,
+                (s) -> s.getExpireCount() == 0 ? 0 : (double) s.getTotalExpireLagMs() / s.getExpireCount())
+            .tags(tags).baseUnit("milliseconds").description("平均过期删除延迟").register(registry);
+        FunctionTimer.builder("wutool.cache.loads", stats, (s) -> s.getLoadSuccessCount() + s.getLoadFailureCount(),
+                KvCacheStats::getTotalLoadTimeNanos, TimeUnit.NANOSECONDS).tags(tags)
+            .description("回源加载耗时").register(registry);
+        FunctionCounter.builder("wutool.cache.load.failures", stats, KvCacheStats::getLoadFailureCount).tags(tags)
+            .description("回源加载失败次数").register(registry);
+        Gauge.builder("wutool.cache.load.p99", stats, (s) -> s.snapshot(0).getLoadNanosP99()).tags(tags)
+            .baseUnit("nanoseconds").description("回源加载耗时p99近似值").register(registry);
+    }
+}
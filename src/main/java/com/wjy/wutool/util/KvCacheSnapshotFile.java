@@ -0,0 +1,204 @@
+package com.wjy.wutool.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * kv缓存快照文件。紧凑二进制格式，基于FileChannel和复用的ByteBuffer顺序读写，不会把整个文件读入内存
+ * <p>
+ * 文件格式：魔数(int) 版本(int)，之后每条记录为 过期时间戳(long) key长度(int) key(utf8) value长度(int) value，
+ * key长度为-1的记录表示结束。写入时先写临时文件，完成后再原子替换，避免进程中途退出留下半个文件
+ *
+ * @author weijiayu
+ * @date 2026/10/17 16:40
+ */
+public class KvCacheSnapshotFile {
+
+    private static final int MAGIC = 0x57554B56;
+    private static final int VERSION = 1;
+    private static final int END_MARK = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 快照写入器
+     */
+    public static class Writer implements Closeable {
+
+        private final Path file;
+        private final Path tmpFile;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private boolean finished = false;
+
+        public Writer(Path file) throws IOException {
+            this.file = file;
+            this.tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }
+
+        public void write(String key, long expireAt, byte[] value) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            ensureRemaining(8 + 4);
+            buffer.putLong(expireAt).putInt(keyBytes.length);
+            putBytes(keyBytes);
+            ensureRemaining(4);
+            buffer.putInt(value.length);
+            putBytes(value);
+        }
+
+        /** 写入结束标记并原子替换正式文件 */
+        public void finish() throws IOException {
+            ensureRemaining(12);
+            buffer.putLong(0L).putInt(END_MARK);
+            flush();
+            channel.force(false);
+            channel.close();
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        }
+
+        private void ensureRemaining(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+            }
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            if (bytes.length <= buffer.remaining()) {
+                buffer.put(bytes);
+                return;
+            }
+            // 放不进缓冲区的大key或大value直接写通道，不经过缓冲区
+            flush();
+            ByteBuffer bytesBuffer = ByteBuffer.wrap(bytes);
+            while (bytesBuffer.hasRemaining()) {
+                channel.write(bytesBuffer);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(tmpFile);
+            }
+        }
+    }
+
+    /**
+     * 快照读取器，按记录流式读取
+     */
+    public static class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private String key;
+        private long expireAt;
+        private byte[] value;
+        /** 是否已读到结束标记 */
+        private boolean ended = false;
+
+        public Reader(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer.flip();
+            if (!fill(8) || buffer.getInt() != MAGIC) {
+                throw new IOException("not a kv cache snapshot file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version: " + version);
+            }
+        }
+
+        /**
+         * 读取下一条记录
+         *
+         * @return boolean 是否读到记录，读到结束标记时返回false
+         * @throws IOException 没有结束标记就到了文件末尾，文件被截断或未复制完整
+         */
+        public boolean next() throws IOException {
+            if (ended) {
+                return false;
+            }
+            if (!fill(12)) {
+                throw new IOException("snapshot file truncated");
+            }
+            expireAt = buffer.getLong();
+            int keyLength = buffer.getInt();
+            if (keyLength == END_MARK) {
+                ended = true;
+                return false;
+            }
+            byte[] keyBytes = readBytes(keyLength);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (!fill(4)) {
+                throw new IOException("snapshot file truncated");
+            }
+            value = readBytes(buffer.getInt());
+            return true;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getExpireAt() {
+            return expireAt;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int copied = Math.min(length, buffer.remaining());
+            buffer.get(bytes, 0, copied);
+            ByteBuffer rest = ByteBuffer.wrap(bytes, copied, length - copied);
+            while (rest.hasRemaining()) {
+                if (channel.read(rest) < 0) {
+                    throw new IOException("snapshot file truncated");
+                }
+            }
+            return bytes;
+        }
+
+        /** 保证缓冲区里至少有size个字节可读 */
+        private boolean fill(int size) throws IOException {
+            if (buffer.remaining() >= size) {
+                return true;
+            }
+            buffer.compact();
+            while (buffer.position() < size) {
+                if (channel.read(buffer) < 0) {
+                    buffer.flip();
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
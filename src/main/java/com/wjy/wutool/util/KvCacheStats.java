@@ -0,0 +1,185 @@
+package com.wjy.wutool.util;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存kv缓存统计。基于LongAdder分段计数，高并发下写入开销低，读取时生成快照
+ * 加载耗时按2的幂分桶记录直方图，快照里给出近似分位值
+ *
+ * @author weijiayu
+ * @date 2026/10/17 14:20
+ */
+public class KvCacheStats {
+
+    /** 直方图桶数，第i个桶记录[2^(i-1), 2^i)纳秒的耗时 */
+    private static final int BUCKET_COUNT = 64;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTimeNanos = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expireCount = new LongAdder();
+    private final LongAdder totalExpireLagMs = new LongAdder();
+    private final LongAdder[] loadTimeBuckets = new LongAdder[BUCKET_COUNT];
+
+    public KvCacheStats() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            loadTimeBuckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordHit() {
+        hitCount.increment();
+    }
+
+    public void recordMiss() {
+        missCount.increment();
+    }
+
+    public void recordLoadSuccess(long loadTimeNanos) {
+        loadSuccessCount.increment();
+        recordLoadTime(loadTimeNanos);
+    }
+
+    public void recordLoadFailure(long loadTimeNanos) {
+        loadFailureCount.increment();
+        recordLoadTime(loadTimeNanos);
+    }
+
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+
+    /**
+     * 记录过期删除
+     *
+     * @param lagMs 实际删除时间比过期时间晚了多久，单位毫秒
+     */
+    public void recordExpire(long lagMs) {
+        expireCount.increment();
+        totalExpireLagMs.add(Math.max(0L, lagMs));
+    }
+
+    private void recordLoadTime(long loadTimeNanos) {
+        long nanos = Math.max(0L, loadTimeNanos);
+        totalLoadTimeNanos.add(nanos);
+        loadTimeBuckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount.sum();
+    }
+
+    public long getTotalLoadTimeNanos() {
+        return totalLoadTimeNanos.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getExpireCount() {
+        return expireCount.sum();
+    }
+
+    public long getTotalExpireLagMs() {
+        return totalExpireLagMs.sum();
+    }
+
+    /**
+     * 生成统计快照
+     *
+     * @param size 当前缓存条数
+     * @return com.wjy.wutool.util.KvCacheStats.Snapshot
+     */
+    public Snapshot snapshot(long size) {
+        long[] buckets = new long[BUCKET_COUNT];
+        long loadCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = loadTimeBuckets[i].sum();
+            loadCount += buckets[i];
+        }
+        long expires = expireCount.sum();
+        return new Snapshot(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+            loadCount == 0 ? 0 : totalLoadTimeNanos.sum() / loadCount, percentile(buckets, loadCount, 0.5),
+            percentile(buckets, loadCount, 0.99), evictionCount.sum(), expires,
+            expires == 0 ? 0 : totalExpireLagMs.sum() / expires, size);
+    }
+
+    /** 取分位所在桶的上界作为近似值 */
+    private static long percentile(long[] buckets, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * quantile);
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets[i];
+            if (count >= threshold) {
+                return i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : 1L << i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * 统计快照
+     */
+    @Getter
+    @ToString
+    public static class Snapshot {
+        private final long hitCount;
+        private final long missCount;
+        private final long loadSuccessCount;
+        private final long loadFailureCount;
+        /** 平均加载耗时，单位纳秒 */
+        private final long averageLoadNanos;
+        /** 加载耗时p50近似值，单位纳秒 */
+        private final long loadNanosP50;
+        /** 加载耗时p99近似值，单位纳秒 */
+        private final long loadNanosP99;
+        private final long evictionCount;
+        private final long expireCount;
+        /** 平均过期删除延迟，单位毫秒 */
+        private final long averageExpireLagMs;
+        private final long size;
+
+        public Snapshot(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+                        long averageLoadNanos, long loadNanosP50, long loadNanosP99, long evictionCount,
+                        long expireCount, long averageExpireLagMs, long size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadSuccessCount = loadSuccessCount;
+            this.loadFailureCount = loadFailureCount;
+            this.averageLoadNanos = averageLoadNanos;
+            this.loadNanosP50 = loadNanosP50;
+            this.loadNanosP99 = loadNanosP99;
+            this.evictionCount = evictionCount;
+            this.expireCount = expireCount;
+            this.averageExpireLagMs = averageExpireLagMs;
+            this.size = size;
+        }
+
+        public double getHitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+    }
+}
@@ -1,86 +1,646 @@
 package com.wjy.wutool.util;
 
+import java.lang.ref.WeakReference;
+import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * 基于时间间隔的内存kv缓存过滤器。可用于流量削峰
+ * 每个key只保存一个long状态，通过CAS原子更新，判断过程无锁且不分配对象。支持三种模式：
+ * <ul>
+ * <li>INTERVAL：间隔模式，距离上一次放行超过指定时长才放行，即每个时间窗口最多放行1次</li>
+ * <li>TOKEN_BUCKET：令牌桶模式，每个时间窗口补充permits个令牌，允许突发permits次（GCRA算法实现）</li>
+ * <li>SLIDING_WINDOW：滑动窗口计数模式，按上一窗口计数加权估算，任意一个窗口长度内最多放行约permits次</li>
+ * </ul>
+ * 容量满后按OverflowPolicy降级处理，默认和旧版本一样直接放行；可改为淘汰最旧key、按概率放行，
+ * 或退化为固定内存的Count-Min草图计数，使过滤在key数量暴涨时依然有效
+ * <p>
+ * 过期清理按时间分桶：key写入时挂到空闲时间所在的桶，清理只处理已到期的桶，每次有处理数量上限，剩余的下次继续。
+ * 所有实例共用一个清理线程，不再每个实例创建一个
  *
  * @author weijiayu
  * @date 2024/7/19 11:17
  */
 public class MemoryKvCacheDurationFilter {
 
+    /** 滑动窗口状态打包：低22位窗口序号，中间21位当前窗口计数，高21位上一窗口计数 */
+    private static final int WINDOW_BITS = 22;
+    private static final int COUNT_BITS = 21;
+    private static final long WINDOW_MASK = (1L << WINDOW_BITS) - 1;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    /** 已被清理的key状态，其他线程看到后重新写入 */
+    private static final long DEAD = -1L;
+    /** 淘汰最旧key时的采样个数 */
+    private static final int EVICT_SAMPLE_SIZE = 8;
+    /** 过期桶个数，覆盖两倍的最长空闲时间 */
+    private static final int BUCKET_COUNT = 64;
+    private static final int BUCKET_MASK = BUCKET_COUNT - 1;
+    /** 所有实例共用的清理线程 */
+    private static final ScheduledExecutorService SWEEP_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "memory-kv-filter-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicLongFieldUpdater<MemoryKvCacheDurationFilter> SKETCH_WINDOW_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(MemoryKvCacheDurationFilter.class, "sketchWindow");
+
     private Long cap = 0L;
     private ChronoUnit chronoUnit;
     private Long duration = 0L;
-    private ConcurrentHashMap<String, Date> kvTimeMap;
-    private ScheduledExecutorService scheduler;
+    private final Mode mode;
+    /** 每个时间窗口放行次数 */
+    private final int permits;
+    /** 时间窗口，单位毫秒 */
+    private final long windowMs;
+    /** 间隔模式下，距离上一次放行至少要经过的时间，单位毫秒 */
+    private final long passIntervalMs;
+    /** 令牌桶模式下，补充一个令牌的时间，单位微秒 */
+    private final long emissionIntervalUs;
+    /** 令牌桶模式下，允许的突发容忍时间，单位微秒 */
+    private final long burstToleranceUs;
+    private ConcurrentHashMap<String, Slot> kvTimeMap;
+    /** 当前key数量。代替ConcurrentHashMap.size()，避免每次判断都累加分段计数 */
+    private final AtomicLong keyCount = new AtomicLong();
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.PASS;
+    /** 概率放行模式下，容量满后新key的放行概率 */
+    private volatile double admitProbability = 0.1;
+    /** 草图模式下的计数器宽度，默认占用1MB内存 */
+    private volatile int sketchWidth = 1 << 16;
+    /** 容量满后的降级计数草图，第一次用到时才创建 */
+    private volatile CountMinSketch overflowSketch;
+    /** 草图当前所属的时间窗口序号，进入新窗口时清空计数 */
+    private volatile long sketchWindow = Long.MIN_VALUE;
+    /** 过期桶，按 空闲时间 / 桶宽度 取模挂入 */
+    private final AtomicReferenceArray<ConcurrentLinkedQueue<Slot>> expireBuckets =
+        new AtomicReferenceArray<ConcurrentLinkedQueue<Slot>>(BUCKET_COUNT);
+    /** 桶宽度，单位毫秒 */
+    private final long bucketWidthMs;
+    /** 已清理到的桶序号，之后到期的key挂到更靠后的桶 */
+    private volatile long sweptBucket;
+    /** 上次清理没处理完的桶，只在清理线程访问 */
+    private ConcurrentLinkedQueue<Slot> sweepBacklog;
+    /** 每次清理最多处理的key数 */
+    private volatile int sweepBudget = 100_000;
+    private final ScheduledFuture<?> sweepFuture;
+    /** 统计。命中表示被过滤，未命中表示放行，过期数为定时清除的key数 */
+    private final KvCacheStats stats = new KvCacheStats();
 
     /**
+     * 过期清理间隔和旧版本一样为5分钟，key变化频繁时建议用带清理间隔的构造方法
      *
      * @param cap 过滤器的缓存容量
      * @param chronoUnit 缓存的时间单位
      * @param duration 缓存的持续时间
      */
     public MemoryKvCacheDurationFilter(Long cap, ChronoUnit chronoUnit, Long duration) {
-        this.cap = cap;
-        this.chronoUnit = chronoUnit;
-        this.duration = duration;
-        kvTimeMap = new ConcurrentHashMap<String, Date>();
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.scheduleAtFixedRate(new InnerCleanThread(chronoUnit, duration), 0, 5, TimeUnit.MINUTES);
+        this(cap, chronoUnit, duration, Mode.INTERVAL, 1, 5, TimeUnit.MINUTES);
     }
 
     public MemoryKvCacheDurationFilter(Long cap, ChronoUnit chronoUnit, Long duration, long period, TimeUnit timeUnit) {
+        this(cap, chronoUnit, duration, Mode.INTERVAL, 1, period, timeUnit);
+    }
+
+    /**
+     * 过期清理间隔为1秒
+     *
+     * @param cap 过滤器的缓存容量
+     * @param chronoUnit 时间窗口的时间单位
+     * @param duration 时间窗口长度
+     * @param mode 过滤模式
+     * @param permits 每个时间窗口放行次数，间隔模式下固定为1
+     */
+    public MemoryKvCacheDurationFilter(Long cap, ChronoUnit chronoUnit, Long duration, Mode mode, int permits) {
+        this(cap, chronoUnit, duration, mode, permits, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     *
+     * @param cap 过滤器的缓存容量
+     * @param chronoUnit 时间窗口的时间单位
+     * @param duration 时间窗口长度
+     * @param mode 过滤模式
+     * @param permits 每个时间窗口放行次数，间隔模式下固定为1
+     * @param period 过期清理间隔，每次只处理已到期的桶
+     * @param timeUnit 过期清理间隔的时间单位
+     */
+    public MemoryKvCacheDurationFilter(Long cap, ChronoUnit chronoUnit, Long duration, Mode mode, int permits,
+                                       long period, TimeUnit timeUnit) {
+        if (permits < 1 || permits >= COUNT_MASK) {
+            throw new IllegalArgumentException("permits out of range: " + permits);
+        }
         this.cap = cap;
         this.chronoUnit = chronoUnit;
         this.duration = duration;
-        kvTimeMap = new ConcurrentHashMap<String, Date>();
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.scheduleAtFixedRate(new InnerCleanThread(chronoUnit, duration), 0, period, timeUnit);
+        this.mode = mode;
+        this.permits = mode == Mode.INTERVAL ? 1 : permits;
+        this.windowMs = Math.max(1L, ceilMillis(chronoUnit.getDuration().multipliedBy(duration)));
+        // 和ChronoUnit.between(old, new) > duration等价：按单位取整后的间隔要超过duration
+        this.passIntervalMs = ceilMillis(chronoUnit.getDuration().multipliedBy(duration + 1));
+        this.emissionIntervalUs = Math.max(1L, windowMs * 1000L / this.permits);
+        this.burstToleranceUs = emissionIntervalUs * (this.permits - 1);
+        kvTimeMap = new ConcurrentHashMap<String, Slot>();
+        // 空闲时间最晚为 当前时间 + 最长空闲时间，桶环覆盖其两倍，写入时不会绕回到未清理的桶
+        long maxIdleMs = Math.max(passIntervalMs, 2 * windowMs);
+        this.bucketWidthMs = Math.max(1L, (maxIdleMs + BUCKET_COUNT / 2 - 1) / (BUCKET_COUNT / 2));
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            expireBuckets.set(i, new ConcurrentLinkedQueue<Slot>());
+        }
+        this.sweptBucket = System.currentTimeMillis() / bucketWidthMs - 1;
+        SweepTask task = new SweepTask(this);
+        this.sweepFuture = SWEEP_SCHEDULER.scheduleAtFixedRate(task, period, period, timeUnit);
+        task.future = sweepFuture;
     }
 
     public Boolean checkAndCacheKvIsOutOfDuration(String key, Date date) {
-        if (kvTimeMap.size() >= cap || key == null || date == null) {
-            // 容量满了
+        if (key == null || date == null) {
             return true;
         }
-        Date oldDate = kvTimeMap.get(key);
-        if (oldDate == null) {
-            // 第一次
-            kvTimeMap.put(key, date);
+        return tryAcquire(key, date.getTime());
+    }
+
+    /**
+     * 以当前时间判断key是否放行
+     *
+     * @param key
+     * @return boolean true表示放行，false表示被过滤
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key, System.currentTimeMillis());
+    }
+
+    /**
+     * 判断key是否放行
+     *
+     * @param key
+     * @param timeMs 事件时间戳，单位毫秒
+     * @return boolean true表示放行，false表示被过滤
+     */
+    public boolean tryAcquire(String key, long timeMs) {
+        if (key == null) {
             return true;
         }
-        if (chronoUnit.between(oldDate.toInstant(), date.toInstant()) > duration) {
-            // 超时，原来的失效，缓存新的
-            kvTimeMap.put(key, date);
+        while (true) {
+            Slot slot = kvTimeMap.get(key);
+            if (slot == null) {
+                if (keyCount.get() >= cap) {
+                    // 容量满了，按策略降级
+                    Boolean result = acquireOnOverflow(key, timeMs);
+                    if (result != null) {
+                        recordResult(result);
+                        return result;
+                    }
+                }
+                // 第一次。并发首次写入只有一个成功，其余按已存在处理
+                Slot newSlot = new Slot(key, initialState(timeMs));
+                slot = kvTimeMap.putIfAbsent(key, newSlot);
+                if (slot == null) {
+                    keyCount.incrementAndGet();
+                    addToBucket(newSlot, idleAtMs(newSlot.state, timeMs));
+                    stats.recordMiss();
+                    return true;
+                }
+            }
+            int result = acquire(slot, timeMs);
+            if (result > 0) {
+                stats.recordMiss();
+                return true;
+            } else if (result == 0) {
+                stats.recordHit();
+                return false;
+            }
+            // 刚好被清理线程回收，删除后重试
+            removeSlot(key, slot);
+        }
+    }
+
+    /**
+     * 设置容量满后的降级策略，默认PASS
+     *
+     * @param policy 降级策略
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        this.overflowPolicy = policy;
+    }
+
+    /**
+     * 设置概率放行模式下的放行概率
+     *
+     * @param probability 0到1之间
+     */
+    public void setAdmitProbability(double probability) {
+        this.admitProbability = probability;
+    }
+
+    /**
+     * 设置草图模式下的计数器宽度。越大误判越少，内存占用为 宽度 * 4行 * 4字节
+     *
+     * @param width 计数器宽度，会向上取整为2的幂
+     */
+    public void setSketchWidth(int width) {
+        this.sketchWidth = width;
+        this.overflowSketch = null;
+    }
+
+    /**
+     * 容量满时的新key处理
+     *
+     * @return java.lang.Boolean 放行结果，返回null表示已腾出空间，继续正常写入
+     */
+    private Boolean acquireOnOverflow(String key, long timeMs) {
+        switch (overflowPolicy) {
+            case EVICT_OLDEST:
+                evictOldest(timeMs);
+                return null;
+            case PROBABILISTIC:
+                return ThreadLocalRandom.current().nextDouble() < admitProbability;
+            case SKETCH:
+                return acquireBySketch(key, timeMs);
+            default:
+                return true;
+        }
+    }
+
+    /** 从最早到期的桶里取key淘汰，近似淘汰最旧。桶都是空的时候退化为采样淘汰 */
+    private void evictOldest(long timeMs) {
+        long from = sweptBucket + 1;
+        int polled = 0;
+        for (long i = from; i < from + BUCKET_COUNT && polled < EVICT_SAMPLE_SIZE; i++) {
+            ConcurrentLinkedQueue<Slot> bucket = expireBuckets.get((int) (i & BUCKET_MASK));
+            Slot slot;
+            while (polled < EVICT_SAMPLE_SIZE && (slot = bucket.poll()) != null) {
+                polled++;
+                long state = slot.state;
+                if (state == DEAD) {
+                    removeSlot(slot.key, slot);
+                    continue;
+                }
+                if (Slot.STATE_UPDATER.compareAndSet(slot, state, DEAD)) {
+                    if (removeSlot(slot.key, slot)) {
+                        stats.recordEviction();
+                    }
+                    return;
+                }
+                // 刚被放行过，挂回对应的桶
+                addToBucket(slot, idleAtMs(slot.state, timeMs));
+            }
+        }
+        evictBySample(timeMs);
+    }
+
+    /** 采样若干key，淘汰其中最久没有放行过的一个 */
+    private void evictBySample(long timeMs) {
+        String oldestKey = null;
+        Slot oldestSlot = null;
+        long oldestActiveMs = Long.MAX_VALUE;
+        Iterator<Map.Entry<String, Slot>> it = kvTimeMap.entrySet().iterator();
+        for (int i = 0; i < EVICT_SAMPLE_SIZE && it.hasNext(); i++) {
+            Map.Entry<String, Slot> entry = it.next();
+            long activeMs = lastActiveMs(entry.getValue().state, timeMs);
+            if (activeMs < oldestActiveMs) {
+                oldestActiveMs = activeMs;
+                oldestKey = entry.getKey();
+                oldestSlot = entry.getValue();
+            }
+        }
+        if (oldestSlot == null) {
+            return;
+        }
+        long state = oldestSlot.state;
+        if (state != DEAD && Slot.STATE_UPDATER.compareAndSet(oldestSlot, state, DEAD)
+            && removeSlot(oldestKey, oldestSlot)) {
+            stats.recordEviction();
+        }
+    }
+
+    /**
+     * 把key挂到空闲时间所在的桶。已清理过的时间挂到下一个待清理的桶，太远的挂到桶环最后一个
+     */
+    private void addToBucket(Slot slot, long idleAtMs) {
+        long swept = sweptBucket;
+        long index = Math.min(Math.max(idleAtMs / bucketWidthMs, swept + 1), swept + BUCKET_MASK);
+        int i = (int) (index & BUCKET_MASK);
+        ConcurrentLinkedQueue<Slot> bucket = expireBuckets.get(i);
+        bucket.offer(slot);
+        if (expireBuckets.get(i) != bucket) {
+            // 写入时桶刚好被清理线程换走，可能已错过，再挂一次。重复挂入无害，清理时会跳过已删除的key
+            expireBuckets.get(i).offer(slot);
+        }
+    }
+
+    /** 固定窗口计数，每个窗口每个key最多放行permits次。草图只会高估，极端情况下会多过滤一些key */
+    private boolean acquireBySketch(String key, long timeMs) {
+        CountMinSketch sketch = overflowSketch;
+        if (sketch == null) {
+            synchronized (this) {
+                sketch = overflowSketch;
+                if (sketch == null) {
+                    sketch = new CountMinSketch(sketchWidth, 4, permits + 1, 0);
+                    overflowSketch = sketch;
+                }
+            }
+        }
+        long windowIndex = Math.floorDiv(timeMs, windowMs);
+        long currentWindow = sketchWindow;
+        if (windowIndex > currentWindow && SKETCH_WINDOW_UPDATER.compareAndSet(this, currentWindow, windowIndex)) {
+            sketch.clear();
+        }
+        return sketch.increment(key.hashCode()) <= permits;
+    }
+
+    private boolean removeSlot(String key, Slot slot) {
+        if (kvTimeMap.remove(key, slot)) {
+            keyCount.decrementAndGet();
             return true;
+        }
+        return false;
+    }
+
+    private void recordResult(boolean pass) {
+        if (pass) {
+            stats.recordMiss();
         } else {
-            return false;
+            stats.recordHit();
         }
     }
 
-    private class InnerCleanThread implements Runnable {
+    /**
+     * 设置每次清理最多处理的key数，处理不完的留到下次继续，避免key很多时单次清理耗时过长
+     *
+     * @param budget 处理数量上限
+     */
+    public void setSweepBudget(int budget) {
+        this.sweepBudget = budget;
+    }
+
+    /**
+     * 停止过期清理。过滤器不再使用时调用，未调用时实例被回收后清理任务也会自动取消
+     */
+    public void close() {
+        sweepFuture.cancel(false);
+    }
+
+    public long size() {
+        return keyCount.get();
+    }
+
+    public KvCacheStats.Snapshot getStats() {
+        return stats.snapshot(size());
+    }
+
+    public KvCacheStats getStatsRecorder() {
+        return stats;
+    }
+
+    private long initialState(long timeMs) {
+        switch (mode) {
+            case TOKEN_BUCKET:
+                return timeMs * 1000L + emissionIntervalUs;
+            case SLIDING_WINDOW:
+                return packWindow(Math.floorDiv(timeMs, windowMs), 0, 1);
+            default:
+                return timeMs;
+        }
+    }
+
+    /**
+     * @return int 1表示放行，0表示被过滤，-1表示slot已被回收
+     */
+    private int acquire(Slot slot, long timeMs) {
+        while (true) {
+            long state = slot.state;
+            if (state == DEAD) {
+                return -1;
+            }
+            long newState;
+            switch (mode) {
+                case TOKEN_BUCKET:
+                    newState = acquireTokenBucket(state, timeMs);
+                    break;
+                case SLIDING_WINDOW:
+                    newState = acquireSlidingWindow(state, timeMs);
+                    break;
+                default:
+                    // 超时，原来的失效，缓存新的
+                    newState = timeMs - state >= passIntervalMs ? timeMs : state;
+            }
+            if (newState == state) {
+                return 0;
+            }
+            if (Slot.STATE_UPDATER.compareAndSet(slot, state, newState)) {
+                return 1;
+            }
+        }
+    }
+
+    /** GCRA：state为理论到达时间，早于允许的突发容忍范围时放行，并推进一个令牌间隔 */
+    private long acquireTokenBucket(long tat, long timeMs) {
+        long nowUs = timeMs * 1000L;
+        if (tat - nowUs > burstToleranceUs) {
+            return tat;
+        }
+        return Math.max(tat, nowUs) + emissionIntervalUs;
+    }
+
+    private long acquireSlidingWindow(long state, long timeMs) {
+        long windowIndex = Math.floorDiv(timeMs, windowMs);
+        long elapsed = timeMs - windowIndex * windowMs;
+        // 窗口序号只保存了低位，按有符号差值判断先后，早于当前窗口的事件计入当前窗口
+        long diff = ((windowIndex - (state & WINDOW_MASK)) << (64 - WINDOW_BITS)) >> (64 - WINDOW_BITS);
+        long curr = (state >>> WINDOW_BITS) & COUNT_MASK;
+        long prev = state >>> (WINDOW_BITS + COUNT_BITS);
+        if (diff <= 0) {
+            windowIndex = state & WINDOW_MASK;
+        } else if (diff == 1) {
+            prev = curr;
+            curr = 0;
+        } else {
+            prev = 0;
+            curr = 0;
+        }
+        // 估算值 = 上一窗口计数 * 上一窗口在滑动窗口内的占比 + 当前窗口计数
+        if (prev * (windowMs - elapsed) + curr * windowMs >= permits * windowMs) {
+            return state;
+        }
+        return packWindow(windowIndex, prev, curr + 1);
+    }
+
+    private static long packWindow(long windowIndex, long prev, long curr) {
+        return (prev << (WINDOW_BITS + COUNT_BITS)) | (curr << WINDOW_BITS) | (windowIndex & WINDOW_MASK);
+    }
 
-        private ChronoUnit chronoUnit;
-        private Long duration;
+    /** key的空闲时间，单位毫秒。到达后删除和保留的效果一致 */
+    private long idleAtMs(long state, long timeMs) {
+        switch (mode) {
+            case TOKEN_BUCKET:
+                return (state + 999L) / 1000L;
+            case SLIDING_WINDOW:
+                long windowIndex = Math.floorDiv(timeMs, windowMs);
+                long diff = ((windowIndex - (state & WINDOW_MASK)) << (64 - WINDOW_BITS)) >> (64 - WINDOW_BITS);
+                // 上一窗口计数在下一个窗口开始后才完全失效
+                return (windowIndex - diff + 2) * windowMs;
+            default:
+                return state + passIntervalMs;
+        }
+    }
 
-        public InnerCleanThread(ChronoUnit chronoUnit, Long duration) {
-            this.chronoUnit = chronoUnit;
-            this.duration = duration;
+    /** 各模式下key最近一次活跃的大致时间，单位毫秒 */
+    private long lastActiveMs(long state, long timeMs) {
+        if (state == DEAD) {
+            return Long.MIN_VALUE;
+        }
+        switch (mode) {
+            case TOKEN_BUCKET:
+                return state / 1000L;
+            case SLIDING_WINDOW:
+                long diff = ((Math.floorDiv(timeMs, windowMs) - (state & WINDOW_MASK)) << (64 - WINDOW_BITS))
+                    >> (64 - WINDOW_BITS);
+                return timeMs - diff * windowMs;
+            default:
+                return state;
+        }
+    }
+
+    private static long ceilMillis(Duration d) {
+        long ms = d.toMillis();
+        return d.getNano() % 1_000_000 == 0 ? ms : ms + 1;
+    }
+
+    /**
+     * 过滤模式
+     */
+    public enum Mode {
+        /** 间隔模式 */
+        INTERVAL,
+        /** 令牌桶模式 */
+        TOKEN_BUCKET,
+        /** 滑动窗口计数模式 */
+        SLIDING_WINDOW
+    }
+
+    /**
+     * 容量满后新key的降级策略
+     */
+    public enum OverflowPolicy {
+        /** 直接放行，不做过滤。默认策略，和旧版本行为一致 */
+        PASS,
+        /** 采样淘汰最久未活跃的key，再写入新key */
+        EVICT_OLDEST,
+        /** 按概率放行新key，不写入缓存 */
+        PROBABILISTIC,
+        /** 退化为固定内存的Count-Min草图按窗口计数 */
+        SKETCH
+    }
+
+    private static final class Slot {
+
+        private static final AtomicLongFieldUpdater<Slot> STATE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Slot.class, "state");
+
+        private final String key;
+        /** 间隔模式为上次放行时间戳，令牌桶模式为理论到达时间（微秒），滑动窗口模式为打包的窗口计数 */
+        private volatile long state;
+
+        private Slot(String key, long state) {
+            this.key = key;
+            this.state = state;
+        }
+    }
+
+    /**
+     * 清理已到期的桶。桶里的key到期则删除，被重新放行过的挂到新的空闲时间对应的桶
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        long lastExpired = now / bucketWidthMs - 1;
+        int budget = sweepBudget;
+        if (lastExpired - sweptBucket > BUCKET_COUNT) {
+            // 落后超过一圈，每个桶只需处理一次
+            sweptBucket = lastExpired - BUCKET_COUNT;
+        }
+        while (budget > 0) {
+            if (sweepBacklog == null) {
+                long next = sweptBucket + 1;
+                if (next > lastExpired) {
+                    return;
+                }
+                int i = (int) (next & BUCKET_MASK);
+                if (!expireBuckets.get(i).isEmpty()) {
+                    sweepBacklog = expireBuckets.getAndSet(i, new ConcurrentLinkedQueue<Slot>());
+                }
+                sweptBucket = next;
+                if (sweepBacklog == null) {
+                    continue;
+                }
+            }
+            Slot slot;
+            while (budget > 0 && (slot = sweepBacklog.poll()) != null) {
+                budget--;
+                expireOrRebucket(slot, now);
+            }
+            if (budget > 0) {
+                sweepBacklog = null;
+            }
+        }
+    }
+
+    private void expireOrRebucket(Slot slot, long now) {
+        while (true) {
+            long state = slot.state;
+            if (state == DEAD) {
+                removeSlot(slot.key, slot);
+                return;
+            }
+            long idleAt = idleAtMs(state, now);
+            if (idleAt > now) {
+                addToBucket(slot, idleAt);
+                return;
+            }
+            // 先把状态CAS为DEAD再删除，避免删掉并发刚放行过的key
+            if (Slot.STATE_UPDATER.compareAndSet(slot, state, DEAD)) {
+                if (removeSlot(slot.key, slot)) {
+                    stats.recordExpire(now - idleAt);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 共用线程上的清理任务。只弱引用过滤器，过滤器被回收后自动取消
+     */
+    private static final class SweepTask implements Runnable {
+
+        private final WeakReference<MemoryKvCacheDurationFilter> filterRef;
+        private volatile ScheduledFuture<?> future;
+
+        private SweepTask(MemoryKvCacheDurationFilter filter) {
+            this.filterRef = new WeakReference<MemoryKvCacheDurationFilter>(filter);
         }
 
         @Override
         public void run() {
+            MemoryKvCacheDurationFilter filter = filterRef.get();
+            if (filter == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
             try {
-                // 定时清除超时key
-                kvTimeMap.entrySet().removeIf(
-                    (entry) -> (chronoUnit.between(entry.getValue().toInstant(), new Date().toInstant()) > duration));
+                filter.sweep();
             } catch (Exception e) {
                 return;
             }
@@ -1,24 +1,264 @@
 package com.wjy.wutool.util;
 
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
 import java.lang.ref.SoftReference;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * 内存定时kv缓存。可避免引入额外中间件
- * 
+ * 过期删除统一交给一个共享的时间轮，读取时再做一次惰性过期判断，不再为每个key单独创建Timer线程
+ * 可选设置最大条数或最大权重，超出后在put路径上按CLOCK（近似LRU）增量淘汰，可叠加TinyLFU准入过滤扫描型流量
+ * 上限是软限制：每次put最多推进固定步数，大量最近访问过的key或并发写入时可能短暂超出上限，后续写入会继续淘汰回落
+ * 可选开启堆外存储，值序列化后放到直接内存slab里，堆上只保留索引，TTL和读写接口不变
+ * 可选开启快照，停机时把未过期的缓存写到本地文件，启动后后台流式加载，避免发版后缓存全空导致回源洪峰
+ * 推荐使用get(key, loader, second)加载方式，同一个key并发未命中时只会有一个线程回源，支持过期前异步提前刷新
+ *
  * @author weijiayu
  * @date 2023/8/24 16:23
  */
+@Slf4j
 public class MemoryTimedKvCacheUtil {
 
-    private static ConcurrentMap<String, SoftReference<Object>> cacheMap = new ConcurrentHashMap<>();
+    private static ConcurrentMap<String, CacheEntry> cacheMap = new ConcurrentHashMap<>();
+
+    /** 过期删除时间轮。100毫秒一格，一圈512格 */
+    private static final HashedWheelTimer EXPIRE_TIMER =
+        new HashedWheelTimer("memory-kv-cache-expire", 100, TimeUnit.MILLISECONDS, 512);
+
+    /** 每次put最多推进的淘汰步数，把淘汰开销均摊到写路径上。步数有限，所以容量上限是软限制 */
+    private static final int MAX_EVICT_STEPS_PER_PUT = 16;
+    /** 未超限时每次put也推进的步数，用于回收队列里已失效的节点 */
+    private static final int CLOCK_STEPS_PER_PUT = 2;
+
+    private static volatile long maximumSize = Long.MAX_VALUE;
+    private static volatile long maximumWeight = Long.MAX_VALUE;
+    private static volatile ToIntFunction<Object> weigher = (v) -> 1;
+    /** 值是否使用软引用保存。设置了容量上限后建议关闭，避免内存紧张时集中GC回收 */
+    private static volatile boolean softValues = true;
+    /** 堆外存储，非空时值序列化后放到堆外 */
+    private static volatile OffHeapSlabStore offHeapStore = null;
+    private static volatile CacheValueSerializer offHeapSerializer = CacheValueSerializer.JDK;
+    /** 频率草图，非空时开启TinyLFU准入 */
+    private static volatile CountMinSketch admissionSketch = null;
+
+    private static final AtomicLong entryCount = new AtomicLong();
+    private static final AtomicLong totalWeight = new AtomicLong();
+    /** CLOCK队列。只在设置了容量上限后使用，设置上限时会把已有缓存补进来 */
+    private static final ConcurrentLinkedQueue<CacheEntry> clockQueue = new ConcurrentLinkedQueue<>();
+
+    private static final KvCacheStats STATS = new KvCacheStats();
+    /** 快照停机钩子，重复开启快照时替换 */
+    private static Thread snapshotHook = null;
+
+    /** 回源中的key，同一个key并发未命中时合并为一次加载 */
+    private static final ConcurrentMap<String, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
+    /** 异步提前刷新线程池。队列满时拒绝刷新任务，旧值仍可用到过期 */
+    private static final ThreadPoolExecutor REFRESH_EXECUTOR = new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(1024), (r) -> {
+            Thread t = new Thread(r, "memory-kv-cache-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+
+    /**
+     * 设置最大缓存条数。已有缓存超出上限时立即淘汰到上限以内，之后的写入超限时增量淘汰，可能短暂超出
+     *
+     * @param maxSize 最大条数，Long.MAX_VALUE表示不限制
+     */
+    public static void setMaximumSize(long maxSize) {
+        maximumSize = maxSize;
+        rebuildClockQueue();
+    }
+
+    /**
+     * 设置最大缓存权重。已有缓存保留写入时计算的权重，超出上限时立即淘汰到上限以内
+     *
+     * @param maxWeight   最大权重，Long.MAX_VALUE表示不限制
+     * @param valueWeigher 单个值的权重计算，如按序列化后的字节数估算
+     */
+    public static void setMaximumWeight(long maxWeight, ToIntFunction<Object> valueWeigher) {
+        weigher = valueWeigher;
+        maximumWeight = maxWeight;
+        rebuildClockQueue();
+    }
+
+    public static void setSoftValues(boolean isSoftValues) {
+        softValues = isSoftValues;
+    }
+
+    /**
+     * 开启堆外存储。应在启动时设置，之后写入的值序列化后存到堆外，堆外空间不足或序列化失败时退回堆内存储。
+     * 已写入堆外的缓存记录了各自的序列化器，重新设置序列化器不影响读取
+     *
+     * @param store      堆外存储，如new OffHeapSlabStore(4 * 1024 * 1024, 256)
+     * @param serializer 值序列化器，为null时使用jdk序列化
+     */
+    public static void setOffHeapStore(OffHeapSlabStore store, CacheValueSerializer serializer) {
+        offHeapSerializer = serializer == null ? CacheValueSerializer.JDK : serializer;
+        offHeapStore = store;
+    }
+
+    /**
+     * 开启或关闭TinyLFU准入。开启后，新key的访问频率低于淘汰候选时直接拒绝缓存，避免一次性扫描冲掉热点数据
+     *
+     * @param enable 是否开启
+     * @param expectedSize 预估缓存条数，用于确定频率草图大小
+     */
+    public static void setTinyLfuAdmission(boolean enable, int expectedSize) {
+        if (!enable) {
+            admissionSketch = null;
+            return;
+        }
+        // 每行计数器取预估条数的4倍以降低碰撞，累计10倍预估条数的访问后衰减一次
+        int size = Math.max(16, Math.min(expectedSize, 1 << 22));
+        admissionSketch = new CountMinSketch(size * 4, 4, 15, size * 10L);
+    }
+
+    public static long size() {
+        return entryCount.get();
+    }
+
+    /**
+     * 获取统计快照：命中率、淘汰数、过期数和过期延迟、加载耗时、当前条数等
+     */
+    public static KvCacheStats.Snapshot getStats() {
+        return STATS.snapshot(size());
+    }
+
+    /**
+     * 获取统计记录器，可用于对接KvCacheMetricsBinder
+     */
+    public static KvCacheStats getStatsRecorder() {
+        return STATS;
+    }
+
+    /**
+     * 开启快照：注册停机钩子保存快照，并在后台异步加载已有快照。加载时跳过已过期的记录，不覆盖启动后新写入的key
+     *
+     * @param file       快照文件
+     * @param serializer 值序列化器，为null时使用jdk序列化
+     * @return java.util.concurrent.CompletableFuture<java.lang.Long> 加载完成的条数
+     */
+    public static CompletableFuture<Long> enableSnapshot(Path file, CacheValueSerializer serializer) {
+        Thread hook = new Thread(() -> {
+            try {
+                saveSnapshot(file, serializer);
+            } catch (Throwable e) {
+                log.error("save cache snapshot fail: " + e.getMessage(), e);
+            }
+        }, "memory-kv-cache-snapshot-save");
+        synchronized (MemoryTimedKvCacheUtil.class) {
+            // 重复调用时替换之前的停机钩子，停机时只保存一次快照
+            if (snapshotHook != null) {
+                Runtime.getRuntime().removeShutdownHook(snapshotHook);
+            }
+            Runtime.getRuntime().addShutdownHook(hook);
+            snapshotHook = hook;
+        }
+        return loadSnapshotAsync(file, serializer);
+    }
+
+    /**
+     * 保存快照。只写入未过期且值仍可用的缓存
+     *
+     * @param file       快照文件
+     * @param serializer 值序列化器，为null时使用jdk序列化
+     * @return long 写入的条数
+     */
+    public static long saveSnapshot(Path file, CacheValueSerializer serializer) throws IOException {
+        CacheValueSerializer valueSerializer = serializer == null ? CacheValueSerializer.JDK : serializer;
+        long count = 0;
+        try (KvCacheSnapshotFile.Writer writer = new KvCacheSnapshotFile.Writer(file)) {
+            long now = System.currentTimeMillis();
+            for (CacheEntry entry : cacheMap.values()) {
+                if (entry.isExpired(now)) {
+                    continue;
+                }
+                byte[] bytes;
+                try {
+                    bytes = entry.getBytes(valueSerializer);
+                } catch (Throwable e) {
+                    log.debug("serialize cache key={} fail: {}", entry.key, e.getMessage());
+                    continue;
+                }
+                if (bytes != null) {
+                    writer.write(entry.key, entry.expireAt, bytes);
+                    count++;
+                }
+            }
+            writer.finish();
+        }
+        log.info("save cache snapshot file={}, count={}", file, count);
+        return count;
+    }
+
+    /**
+     * 后台异步加载快照
+     *
+     * @param file       快照文件
+     * @param serializer 值序列化器，为null时使用jdk序列化
+     * @return java.util.concurrent.CompletableFuture<java.lang.Long> 加载完成的条数
+     */
+    public static CompletableFuture<Long> loadSnapshotAsync(Path file, CacheValueSerializer serializer) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        Thread loadThread = new Thread(() -> {
+            try {
+                future.complete(loadSnapshot(file, serializer));
+            } catch (Throwable e) {
+                log.error("load cache snapshot fail: " + e.getMessage(), e);
+                future.completeExceptionally(e);
+            }
+        }, "memory-kv-cache-snapshot-load");
+        loadThread.setDaemon(true);
+        loadThread.start();
+        return future;
+    }
 
     /**
-     * 缓存kv，单位秒
-     * 
+     * 流式加载快照。跳过已过期的记录，已存在的key以内存中的为准
+     *
+     * @param file       快照文件
+     * @param serializer 值序列化器，为null时使用jdk序列化
+     * @return long 加载的条数
+     * @throws IOException 文件不是快照或被截断。截断前已读到的完整记录仍会加载
+     */
+    public static long loadSnapshot(Path file, CacheValueSerializer serializer) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        CacheValueSerializer valueSerializer = serializer == null ? CacheValueSerializer.JDK : serializer;
+        long count = 0;
+        try (KvCacheSnapshotFile.Reader reader = new KvCacheSnapshotFile.Reader(file)) {
+            while (reader.next()) {
+                if (reader.getExpireAt() <= System.currentTimeMillis()) {
+                    continue;
+                }
+                Object value;
+                try {
+                    value = valueSerializer.deserialize(reader.getValue());
+                } catch (Throwable e) {
+                    log.debug("deserialize cache key={} fail: {}", reader.getKey(), e.getMessage());
+                    continue;
+                }
+                if (doCache(reader.getKey(), value, reader.getExpireAt(), true)) {
+                    count++;
+                }
+            }
+        }
+        log.info("load cache snapshot file={}, count={}", file, count);
+        return count;
+    }
+
+    /**
+     * 缓存kv，单位秒。重复缓存同一个key会覆盖旧值，并以新的过期时间为准
+     *
      * @author weijiayu
      * @date 2023/8/24 16:27
      * @param key
@@ -27,37 +267,383 @@ public class MemoryTimedKvCacheUtil {
      * @return void
      */
     public static void cacheSecond(String key, Object value, int second) {
-        SoftReference<Object> sf = new SoftReference<Object>(value);
-        cacheMap.put(key, sf);
-        Timer timer = new Timer();
-        timer.schedule(new DeleteTask(key, timer), second * 1000);
+        doCache(key, value, System.currentTimeMillis() + second * 1000L, false);
+    }
+
+    private static boolean doCache(String key, Object value, long expireAt, boolean onlyIfAbsent) {
+        CacheEntry entry = newEntry(key, value, expireAt);
+        recordFrequency(key);
+        CacheEntry oldEntry;
+        if (onlyIfAbsent) {
+            oldEntry = cacheMap.putIfAbsent(key, entry);
+            if (oldEntry != null) {
+                entry.releaseStorage();
+                return false;
+            }
+        } else {
+            oldEntry = cacheMap.put(key, entry);
+        }
+        onAdded(entry);
+        if (oldEntry != null) {
+            // 取消旧值的删除任务，避免提前删掉新值
+            onRemoved(oldEntry);
+        }
+        // 只删除和自己对应的那一次缓存
+        entry.expireTimeout = EXPIRE_TIMER.newTimeout(() -> expireEntry(key, entry),
+            expireAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        if (isBounded()) {
+            clockQueue.offer(entry);
+            evict(entry, MAX_EVICT_STEPS_PER_PUT);
+        }
+        return true;
+    }
+
+    public static Object getValue(String key) {
+        CacheEntry entry = getAccessedEntry(key);
+        Object value = entry == null ? null : entry.getValue();
+        if (value == null) {
+            STATS.recordMiss();
+        } else {
+            STATS.recordHit();
+        }
+        return value;
+    }
+
+    /**
+     * 获取缓存，未命中时调用loader回源并缓存。同一个key并发未命中时只有一个线程执行loader，其余线程等待该结果
+     *
+     * @param key
+     * @param loader 回源加载，返回null时不缓存
+     * @param second 缓存时间，单位秒
+     * @return java.lang.Object
+     */
+    public static Object get(String key, Function<String, Object> loader, int second) {
+        return get(key, loader, second, 0);
+    }
+
+    /**
+     * 获取缓存，未命中时调用loader回源并缓存。剩余有效期不足refreshAheadSecond时，先返回旧值并异步提前刷新
+     *
+     * @param key
+     * @param loader             回源加载，返回null时不缓存
+     * @param second             缓存时间，单位秒
+     * @param refreshAheadSecond 提前刷新时间，单位秒，0表示不提前刷新
+     * @return java.lang.Object
+     */
+    public static Object get(String key, Function<String, Object> loader, int second, int refreshAheadSecond) {
+        CacheEntry entry = getAccessedEntry(key);
+        if (entry != null) {
+            Object value = entry.getValue();
+            if (value != null) {
+                STATS.recordHit();
+                if (refreshAheadSecond > 0
+                    && entry.expireAt - System.currentTimeMillis() <= refreshAheadSecond * 1000L) {
+                    refreshAsync(key, loader, second);
+                }
+                return value;
+            }
+        }
+        return load(key, loader, second);
+    }
+
+    private static Object load(String key, Function<String, Object> loader, int second) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loadingFuture = loadingMap.putIfAbsent(key, future);
+        if (loadingFuture != null) {
+            // 已有线程在回源，等待其结果
+            STATS.recordMiss();
+            try {
+                return loadingFuture.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            // 双重检查，避免刚好在上一次加载完成后进入导致重复回源
+            CacheEntry entry = getAliveEntry(key);
+            Object value = entry == null ? null : entry.getValue();
+            if (value != null) {
+                STATS.recordHit();
+            } else {
+                STATS.recordMiss();
+                value = loadAndCache(key, loader, second);
+            }
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(key, future);
+        }
     }
 
-    public static Object getValue(String key) { return cacheMap.get(key).get(); }
+    private static void refreshAsync(String key, Function<String, Object> loader, int second) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (loadingMap.putIfAbsent(key, future) != null) {
+            // 已在加载或刷新中
+            return;
+        }
+        try {
+            REFRESH_EXECUTOR.execute(() -> {
+                try {
+                    future.complete(loadAndCache(key, loader, second));
+                } catch (Throwable e) {
+                    // 刷新失败保留旧值，等过期后再同步回源
+                    log.warn("refresh cache key={} fail: {}", key, e.getMessage());
+                    future.completeExceptionally(e);
+                } finally {
+                    loadingMap.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 刷新任务被丢弃，释放占位
+            loadingMap.remove(key, future);
+        }
+    }
 
     public static Boolean containsKey(String key) {
-        return cacheMap.containsKey(key);
+        return getAliveEntry(key) != null;
     }
 
-    private static class DeleteTask extends TimerTask {
-        private String key;
-        private Timer timer;
+    private static Object loadAndCache(String key, Function<String, Object> loader, int second) {
+        long startTime = System.nanoTime();
+        Object value;
+        try {
+            value = loader.apply(key);
+        } catch (Throwable e) {
+            STATS.recordLoadFailure(System.nanoTime() - startTime);
+            throw e;
+        }
+        STATS.recordLoadSuccess(System.nanoTime() - startTime);
+        if (value != null) {
+            cacheSecond(key, value, second);
+        }
+        return value;
+    }
 
-        public DeleteTask(String key, Timer timer) {
-            this.key = key;
-            this.timer = timer;
+    private static CacheEntry getAccessedEntry(String key) {
+        // 未命中也计入频率，反复请求的key才有机会通过准入
+        recordFrequency(key);
+        CacheEntry entry = getAliveEntry(key);
+        if (entry != null) {
+            entry.referenced = true;
         }
+        return entry;
+    }
 
-        @Override
-        public void run() {
+    private static CacheEntry getAliveEntry(String key) {
+        CacheEntry entry = cacheMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.isExpired(now)) {
+            // 惰性过期。时间轮有tick精度误差，读取时以实际过期时间为准
+            if (removeEntry(key, entry)) {
+                STATS.recordExpire(now - entry.expireAt);
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    private static CacheEntry newEntry(String key, Object value, long expireAt) {
+        int weight = weigher.applyAsInt(value);
+        OffHeapSlabStore store = offHeapStore;
+        if (store != null) {
+            CacheValueSerializer serializer = offHeapSerializer;
             try {
-                cacheMap.remove(key);
-                timer.cancel();
-                if (null != timer) {
-                    timer = null;
+                OffHeapSlabStore.Pointer pointer = store.write(serializer.serialize(value));
+                if (pointer != null) {
+                    return new CacheEntry(key, pointer, CacheEntry.STORAGE_OFF_HEAP, expireAt, weight, serializer);
+                }
+            } catch (Throwable e) {
+                log.debug("serialize cache key={} fail: {}", key, e.getMessage());
+            }
+            // 堆外空间不足或无法序列化时退回堆内存储
+        }
+        if (softValues) {
+            return new CacheEntry(key, new SoftReference<Object>(value), CacheEntry.STORAGE_SOFT, expireAt, weight,
+                null);
+        }
+        return new CacheEntry(key, value, CacheEntry.STORAGE_HEAP, expireAt, weight, null);
+    }
+
+    private static boolean isBounded() {
+        return maximumSize != Long.MAX_VALUE || maximumWeight != Long.MAX_VALUE;
+    }
+
+    private static boolean isOverflow() {
+        return entryCount.get() > maximumSize || totalWeight.get() > maximumWeight;
+    }
+
+    private static void recordFrequency(String key) {
+        CountMinSketch sketch = admissionSketch;
+        if (sketch != null) {
+            sketch.increment(key.hashCode());
+        }
+    }
+
+    /**
+     * 重建CLOCK队列。未设置上限时写入的缓存不在队列里，设置上限后补进来，并把已有缓存淘汰到上限以内
+     */
+    private static synchronized void rebuildClockQueue() {
+        clockQueue.clear();
+        if (!isBounded()) {
+            return;
+        }
+        int count = 0;
+        for (CacheEntry entry : cacheMap.values()) {
+            clockQueue.offer(entry);
+            count++;
+        }
+        // 最多扫两圈：第一圈清除访问标记，第二圈一定能找到淘汰候选
+        evict(null, (int) Math.min(Integer.MAX_VALUE, 2L * count + CLOCK_STEPS_PER_PUT));
+    }
+
+    /**
+     * CLOCK淘汰。指针扫过的节点：已失效的直接丢弃，最近访问过的清除标记后放回队尾，否则作为淘汰候选
+     *
+     * @param candidate     新写入的缓存，参与TinyLFU准入比较，为null时不做准入判断
+     * @param maxEvictSteps 超限时最多推进的步数
+     */
+    private static void evict(CacheEntry candidate, int maxEvictSteps) {
+        int steps = 0;
+        int maxSteps = CLOCK_STEPS_PER_PUT;
+        while (steps++ < maxSteps) {
+            boolean overflow = isOverflow();
+            if (overflow) {
+                maxSteps = maxEvictSteps;
+            } else if (steps > CLOCK_STEPS_PER_PUT) {
+                // 已淘汰回上限以内，不再继续清除访问标记
+                return;
+            }
+            CacheEntry entry = clockQueue.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entry.removed || cacheMap.get(entry.key) != entry) {
+                continue;
+            }
+            if (!overflow || entry.referenced) {
+                entry.referenced = false;
+                clockQueue.offer(entry);
+                continue;
+            }
+            if (candidate != null && entry != candidate && !admit(candidate, entry)) {
+                // 新key热度不如淘汰候选，拒绝新key，候选放回
+                clockQueue.offer(entry);
+                if (removeEntry(candidate.key, candidate)) {
+                    STATS.recordEviction();
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
+                continue;
+            }
+            if (removeEntry(entry.key, entry)) {
+                STATS.recordEviction();
+            }
+        }
+    }
+
+    private static boolean admit(CacheEntry candidate, CacheEntry victim) {
+        CountMinSketch sketch = admissionSketch;
+        if (sketch == null || candidate.removed) {
+            return true;
+        }
+        return sketch.estimate(candidate.key.hashCode()) > sketch.estimate(victim.key.hashCode());
+    }
+
+    private static void expireEntry(String key, CacheEntry entry) {
+        if (removeEntry(key, entry)) {
+            STATS.recordExpire(System.currentTimeMillis() - entry.expireAt);
+        }
+    }
+
+    private static boolean removeEntry(String key, CacheEntry entry) {
+        if (cacheMap.remove(key, entry)) {
+            onRemoved(entry);
+            return true;
+        }
+        return false;
+    }
+
+    private static void onAdded(CacheEntry entry) {
+        entryCount.incrementAndGet();
+        totalWeight.addAndGet(entry.weight);
+    }
+
+    private static void onRemoved(CacheEntry entry) {
+        entry.removed = true;
+        entry.cancelExpire();
+        entry.releaseStorage();
+        entryCount.decrementAndGet();
+        totalWeight.addAndGet(-entry.weight);
+    }
+
+    private static class CacheEntry {
+        private static final int STORAGE_HEAP = 0;
+        private static final int STORAGE_SOFT = 1;
+        private static final int STORAGE_OFF_HEAP = 2;
+
+        private final String key;
+        /** 值本身、软引用或堆外位置，由storage决定 */
+        private final Object value;
+        private final int storage;
+        /** 过期时间戳，单位毫秒 */
+        private final long expireAt;
+        private final int weight;
+        /** 堆外存储写入时使用的序列化器，之后切换序列化器也按写入时的反序列化 */
+        private final CacheValueSerializer serializer;
+        /** CLOCK访问标记 */
+        private volatile boolean referenced = false;
+        private volatile boolean removed = false;
+        private volatile HashedWheelTimer.Timeout expireTimeout;
+
+        public CacheEntry(String key, Object value, int storage, long expireAt, int weight,
+                          CacheValueSerializer serializer) {
+            this.key = key;
+            this.value = value;
+            this.storage = storage;
+            this.expireAt = expireAt;
+            this.weight = weight;
+            this.serializer = serializer;
+        }
+
+        public Object getValue() {
+            if (storage == STORAGE_SOFT) {
+                return ((SoftReference<?>) value).get();
+            }
+            if (storage == STORAGE_OFF_HEAP) {
+                // 并发删除后读不到数据，按未命中处理
+                byte[] bytes = ((OffHeapSlabStore.Pointer) value).read();
+                return bytes == null ? null : serializer.deserialize(bytes);
+            }
+            return value;
+        }
+
+        /** 获取值的序列化字节。堆外存储且序列化器一致时直接拷贝，不再反序列化 */
+        public byte[] getBytes(CacheValueSerializer targetSerializer) {
+            if (storage == STORAGE_OFF_HEAP && targetSerializer == serializer) {
+                return ((OffHeapSlabStore.Pointer) value).read();
+            }
+            Object v = getValue();
+            return v == null ? null : targetSerializer.serialize(v);
+        }
+
+        public void releaseStorage() {
+            if (storage == STORAGE_OFF_HEAP) {
+                ((OffHeapSlabStore.Pointer) value).free();
+            }
+        }
+
+        public boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+
+        public void cancelExpire() {
+            HashedWheelTimer.Timeout timeout = expireTimeout;
+            if (timeout != null) {
+                timeout.cancel();
             }
         }
     }
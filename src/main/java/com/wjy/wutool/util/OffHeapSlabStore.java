@@ -0,0 +1,223 @@
+package com.wjy.wutool.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆外slab存储。按固定大小申请直接内存块（slab），块内按2的幂大小分级切分，释放后的空间按级别回收复用
+ * 堆上只保留很小的Pointer索引对象，大数据量的值不再参与GC扫描和复制
+ * <p>
+ * 读取和释放通过Pointer上的引用计数协调：读取期间释放只做标记，最后一个读者结束后才真正回收空间，不会读到被复用的数据
+ *
+ * @author weijiayu
+ * @date 2026/10/17 15:38
+ */
+public class OffHeapSlabStore {
+
+    /** 最小分配单位 */
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private final int slabSize;
+    private final int maxSlabCount;
+    private final ByteBuffer[] slabs;
+    /** 按级别回收的空闲块，值为slab序号和块内偏移的组合 */
+    private final List<ConcurrentLinkedQueue<Long>> freeLists;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /** 当前用于顺序切分的slab */
+    private volatile int currentSlab = -1;
+    private volatile int currentOffset = 0;
+
+    /**
+     * @param slabSize     单个slab大小，单位字节，会向上取整为2的幂，同时也是单个值的大小上限
+     * @param maxSlabCount 最多申请的slab个数，总内存上限为slabSize * maxSlabCount
+     */
+    public OffHeapSlabStore(int slabSize, int maxSlabCount) {
+        int size = MIN_CHUNK_SIZE;
+        while (size < slabSize) {
+            size <<= 1;
+        }
+        this.slabSize = size;
+        this.maxSlabCount = maxSlabCount;
+        this.slabs = new ByteBuffer[maxSlabCount];
+        int classCount = Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE) + 1;
+        this.freeLists = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            freeLists.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * 写入数据
+     *
+     * @param bytes 数据
+     * @return com.wjy.wutool.util.OffHeapSlabStore.Pointer 数据位置，空间不足或数据超过slab大小时返回null
+     */
+    public Pointer write(byte[] bytes) {
+        if (bytes.length > slabSize) {
+            return null;
+        }
+        int sizeClass = sizeClassOf(bytes.length);
+        long address = allocate(sizeClass);
+        if (address < 0) {
+            return null;
+        }
+        int slabIndex = (int) (address >>> 32);
+        int offset = (int) address;
+        ByteBuffer buffer = slabs[slabIndex].duplicate();
+        buffer.position(offset);
+        buffer.put(bytes);
+        usedBytes.addAndGet(chunkSizeOf(sizeClass));
+        return new Pointer(this, slabIndex, offset, bytes.length, sizeClass);
+    }
+
+    /**
+     * 读取数据
+     *
+     * @param pointer 数据位置
+     * @return byte[] 数据拷贝，已释放时返回null
+     */
+    public byte[] read(Pointer pointer) {
+        if (!pointer.retain()) {
+            return null;
+        }
+        try {
+            byte[] bytes = new byte[pointer.length];
+            ByteBuffer buffer = slabs[pointer.slabIndex].duplicate();
+            buffer.position(pointer.offset);
+            buffer.get(bytes);
+            return bytes;
+        } finally {
+            pointer.release();
+        }
+    }
+
+    /**
+     * 释放空间。有读者时延迟到读取结束后回收
+     */
+    public void free(Pointer pointer) {
+        pointer.markFreed();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getCapacityBytes() {
+        return (long) slabSize * maxSlabCount;
+    }
+
+    private long allocate(int sizeClass) {
+        Long address = freeLists.get(sizeClass).poll();
+        if (address != null) {
+            return address;
+        }
+        int chunkSize = chunkSizeOf(sizeClass);
+        synchronized (this) {
+            if (currentSlab < 0 || currentOffset + chunkSize > slabSize) {
+                if (currentSlab + 1 >= maxSlabCount) {
+                    return -1;
+                }
+                // 当前slab剩余空间不够，申请新的slab。剩余的尾部空间直接放弃
+                slabs[currentSlab + 1] = ByteBuffer.allocateDirect(slabSize);
+                currentSlab++;
+                currentOffset = 0;
+            }
+            long newAddress = ((long) currentSlab << 32) | currentOffset;
+            currentOffset += chunkSize;
+            return newAddress;
+        }
+    }
+
+    private void recycle(Pointer pointer) {
+        usedBytes.addAndGet(-chunkSizeOf(pointer.sizeClass));
+        freeLists.get(pointer.sizeClass).offer(((long) pointer.slabIndex << 32) | pointer.offset);
+    }
+
+    private static int sizeClassOf(int length) {
+        int size = Math.max(length, MIN_CHUNK_SIZE);
+        int ceil = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return ceil - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE);
+    }
+
+    private static int chunkSizeOf(int sizeClass) {
+        return MIN_CHUNK_SIZE << sizeClass;
+    }
+
+    /**
+     * 堆外数据位置
+     */
+    public static class Pointer {
+
+        private static final int FREED = 1 << 30;
+        private static final AtomicIntegerFieldUpdater<Pointer> STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Pointer.class, "state");
+
+        private final OffHeapSlabStore store;
+        private final int slabIndex;
+        private final int offset;
+        private final int length;
+        private final int sizeClass;
+        /** 低位为当前读者数，FREED位表示已释放 */
+        private volatile int state = 0;
+
+        private Pointer(OffHeapSlabStore store, int slabIndex, int offset, int length, int sizeClass) {
+            this.store = store;
+            this.slabIndex = slabIndex;
+            this.offset = offset;
+            this.length = length;
+            this.sizeClass = sizeClass;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /** 读取数据拷贝，已释放时返回null */
+        public byte[] read() {
+            return store.read(this);
+        }
+
+        /** 释放空间 */
+        public void free() {
+            store.free(this);
+        }
+
+        private boolean retain() {
+            while (true) {
+                int s = state;
+                if ((s & FREED) != 0) {
+                    return false;
+                }
+                if (STATE_UPDATER.compareAndSet(this, s, s + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            if (STATE_UPDATER.decrementAndGet(this) == FREED) {
+                store.recycle(this);
+            }
+        }
+
+        private void markFreed() {
+            while (true) {
+                int s = state;
+                if ((s & FREED) != 0) {
+                    return;
+                }
+                if (STATE_UPDATER.compareAndSet(this, s, s | FREED)) {
+                    if (s == 0) {
+                        store.recycle(this);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
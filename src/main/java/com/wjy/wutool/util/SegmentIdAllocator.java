@@ -0,0 +1,155 @@
+package com.wjy.wutool.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 号段id分配器。每次从SegmentSource预留一段id在内存里分配，代替每个实体都查一次数据库自增id
+ * 双缓冲：当前号段用掉一定比例后异步预取下一个号段，用完时直接切换，数据库短暂抖动也不影响发号
+ * 分配出的id从1开始趋势递增，可配合ShortIdUtil.generateShortId(long)生成短id
+ * 号段预留总是在预取线程上执行，不会加入调用方线程上的事务：调用方回滚时不会撤销已发出id所在号段的预留，
+ * 也不会在业务事务提交前一直持有号段表的行锁
+ *
+ * @author weijiayu
+ * @date 2026/10/17 19:00
+ */
+@Slf4j
+public class SegmentIdAllocator {
+
+    /** 所有分配器共用的预取线程，首次加载和预取失败后的重新加载也在这里执行 */
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "segment-id-prefetch");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Segment EMPTY = new Segment(0L, 0L, 0L);
+
+    private final String bizTag;
+    private final SegmentSource segmentSource;
+    private final int step;
+    /** 当前号段用掉的比例达到该值时开始预取下一个号段 */
+    private final double prefetchRatio;
+    private volatile Segment current = EMPTY;
+    /** 预取中或已预取好的下一个号段，只在synchronized里读写 */
+    private CompletableFuture<Segment> nextSegment;
+
+    public SegmentIdAllocator(String bizTag, SegmentSource segmentSource, int step) {
+        this(bizTag, segmentSource, step, 0.1D);
+    }
+
+    /**
+     *
+     * @param bizTag 业务标识
+     * @param segmentSource 号段来源
+     * @param step 号段长度
+     * @param prefetchRatio 当前号段用掉的比例达到该值时预取下一个号段，0到1之间
+     */
+    public SegmentIdAllocator(String bizTag, SegmentSource segmentSource, int step, double prefetchRatio) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must be positive: " + step);
+        }
+        this.bizTag = bizTag;
+        this.segmentSource = segmentSource;
+        this.step = step;
+        this.prefetchRatio = prefetchRatio;
+    }
+
+    /**
+     * 分配下一个id
+     *
+     * @return long
+     */
+    public long nextId() {
+        while (true) {
+            Segment segment = current;
+            long id = segment.cursor.getAndIncrement();
+            if (id < segment.end) {
+                // 只有刚好分配到预取位置的线程触发预取
+                if (id == segment.prefetchAt) {
+                    prefetch();
+                }
+                return id;
+            }
+            switchSegment(segment);
+        }
+    }
+
+    /**
+     * 分配下一个id并转成混淆后的短id
+     *
+     * @return java.lang.String
+     */
+    public String nextShortId() {
+        return ShortIdUtil.generateShortId(nextId());
+    }
+
+    private synchronized void prefetch() {
+        if (nextSegment == null) {
+            nextSegment = CompletableFuture.supplyAsync(this::loadSegment, PREFETCH_EXECUTOR);
+        }
+    }
+
+    private synchronized void switchSegment(Segment exhausted) {
+        if (current != exhausted) {
+            // 其他线程已经切换过
+            return;
+        }
+        CompletableFuture<Segment> future = nextSegment;
+        nextSegment = null;
+        Segment segment = null;
+        if (future != null) {
+            try {
+                segment = waitSegment(future);
+            } catch (ExecutionException e) {
+                log.warn("prefetch id segment failed, reload, bizTag={}", bizTag, e.getCause());
+            }
+        }
+        if (segment == null) {
+            try {
+                segment = waitSegment(CompletableFuture.supplyAsync(this::loadSegment, PREFETCH_EXECUTOR));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException("load id segment failed, bizTag=" + bizTag, cause);
+            }
+        }
+        current = segment;
+    }
+
+    private Segment waitSegment(CompletableFuture<Segment> future) throws ExecutionException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting id segment, bizTag=" + bizTag, e);
+        }
+    }
+
+    private Segment loadSegment() {
+        long end = segmentSource.reserve(bizTag, step);
+        // 0不作为合法id分配，很多场景用0表示未设置，第一个号段从1开始
+        long start = Math.max(end - step, 1L);
+        return new Segment(start, end, start + (long) (step * prefetchRatio));
+    }
+
+    private static final class Segment {
+
+        private final AtomicLong cursor;
+        /** 号段结束值，不包含 */
+        private final long end;
+        private final long prefetchAt;
+
+        private Segment(long start, long end, long prefetchAt) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.wjy.wutool.util;
+
+/**
+ * 号段来源。每次预留一段连续id，由SegmentIdAllocator在内存里逐个分配，避免每个id都访问一次数据库
+ * 实现需保证多节点、多进程并发调用时预留的号段互不重叠
+ *
+ * @author weijiayu
+ * @date 2026/10/17 18:40
+ */
+public interface SegmentSource {
+
+    /**
+     * 预留号段
+     *
+     * @param bizTag 业务标识，不同业务的id各自递增
+     * @param step 号段长度
+     * @return long 号段结束值（不包含），本次预留的号段为 [返回值 - step, 返回值)
+     */
+    long reserve(String bizTag, int step);
+}
@@ -1,11 +1,15 @@
 package com.wjy.wutool.util;
 
-import cn.hutool.core.codec.Base62;
+import cn.hutool.core.util.IdUtil;
 
-import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 唯一短id生成工具类
+ * <p>
+ * generateShortId()基于雪花算法：41位毫秒时间戳 + 10位节点id + 12位毫秒内序号，单节点每毫秒最多4096个，多节点按节点id区分互不冲突。
+ * 序号通过CAS无锁递增，时钟小幅回拨时沿用上次的时间戳继续发号，回拨超过阈值时抛异常，不会生成重复id。
+ * 输出为Base62编码，最长11位。编码直接写入char[]或StringBuilder，不额外分配ByteBuffer和字节数组
  *
  * @author weijiayu
  * @date 2025/7/10 23:24
@@ -13,6 +17,36 @@ import java.nio.ByteBuffer;
 public class ShortIdUtil {
 
     private static final long OBFUSCATION_PRIME = (4861877399L * 4861877399L * 4861877399L + 3L);
+    private static final char[] BASE62_ALPHABET =
+        "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+    /** long按Base62编码的最大长度 */
+    public static final int MAX_BASE62_LENGTH = 11;
+
+    /** 时间戳起点 2025-01-01 00:00:00 UTC */
+    private static final long EPOCH_MS = 1735689600000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    /** 可容忍的最大时钟回拨，超过则抛异常 */
+    private static final long MAX_BACKWARD_MS = 1000L;
+
+    /** 上一次发号的 相对时间戳 << 12 | 序号 */
+    private static final AtomicLong LAST_STATE = new AtomicLong();
+    /** 节点id，默认和hutool雪花算法一样按mac地址和进程号生成，集群部署时建议显式设置 */
+    private static volatile long nodeId = defaultNodeId();
+
+    /**
+     * 设置节点id，集群内每个节点不同
+     *
+     * @param id 0到1023
+     */
+    public static void setNodeId(long id) {
+        if (id < 0 || id > MAX_NODE_ID) {
+            throw new IllegalArgumentException("node id out of range: " + id);
+        }
+        nodeId = id;
+    }
 
     /**
      * 唯一短Id生成
@@ -21,8 +55,49 @@ public class ShortIdUtil {
      * @date 2025/6/16 23:53
      */
     public static String generateShortId() {
-        long unionId = System.currentTimeMillis();
-        return generateShortId(unionId);
+        char[] buf = new char[MAX_BASE62_LENGTH];
+        int length = encodeBase62(nextId(), buf, 0);
+        return new String(buf, 0, length);
+    }
+
+    /**
+     * 唯一短Id生成，追加到sb，可复用StringBuilder减少分配
+     *
+     * @param sb 输出
+     */
+    public static void appendShortId(StringBuilder sb) {
+        appendBase62(nextId(), sb);
+    }
+
+    /**
+     * 雪花算法生成唯一id
+     *
+     * @return long 趋势递增的正数id
+     */
+    public static long nextId() {
+        while (true) {
+            long now = System.currentTimeMillis() - EPOCH_MS;
+            long last = LAST_STATE.get();
+            long lastTs = last >>> SEQUENCE_BITS;
+            long next;
+            if (now > lastTs) {
+                next = now << SEQUENCE_BITS;
+            } else if (lastTs - now > MAX_BACKWARD_MS) {
+                throw new IllegalStateException(
+                    "clock moved backwards " + (lastTs - now) + "ms, refuse to generate id");
+            } else if ((last & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                // 同一毫秒内，或时钟小幅回拨时沿用上次的时间戳
+                next = last + 1;
+            } else {
+                // 当前毫秒序号用完，等时钟走到下一毫秒
+                Thread.yield();
+                continue;
+            }
+            if (LAST_STATE.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | nodeId << SEQUENCE_BITS
+                    | (next & SEQUENCE_MASK);
+            }
+        }
     }
 
     /**
@@ -33,14 +108,93 @@ public class ShortIdUtil {
      * @date 2025/6/16 23:53
      */
     public static String generateShortId(long unionId) {
+        char[] buf = new char[MAX_BASE62_LENGTH];
+        int length = encodeShortId(unionId, buf, 0);
+        return new String(buf, 0, length);
+    }
+
+    /**
+     * 按unionId生成短id写入buf，结果和generateShortId(long)一致
+     *
+     * @param unionId 唯一Id
+     * @param buf 输出，从offset起至少留9位
+     * @param offset 写入起始位置
+     * @return int 写入的字符数
+     */
+    public static int encodeShortId(long unionId, char[] buf, int offset) {
         long obfuscatedId = unionId * OBFUSCATION_PRIME;
-        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
-        buffer.putLong(obfuscatedId);
-        byte[] fullBytes = buffer.array();
-        // 使用6个字节来缩短ID长度.
+        // 使用低6个字节来缩短ID长度.
         // 这会带来极低的碰撞风险，但长度会缩短到9位.
-        byte[] shortBytes = new byte[6];
-        System.arraycopy(fullBytes, 2, shortBytes, 0, 6); // 取后6个字节
-        return Base62.encode(shortBytes);
+        long shortValue = obfuscatedId & 0xFFFFFFFFFFFFL;
+        // 和按字节数组做Base62编码保持一致：每个前导0字节输出一个'0'
+        int pos = offset;
+        for (int shift = 40; shift >= 0 && (shortValue >>> shift & 0xFF) == 0; shift -= 8) {
+            buf[pos++] = BASE62_ALPHABET[0];
+        }
+        if (shortValue != 0) {
+            pos += encodeBase62(shortValue, buf, pos);
+        }
+        return pos - offset;
+    }
+
+    /**
+     * long按无符号数做Base62编码写入buf
+     *
+     * @param value 数值
+     * @param buf 输出，从offset起至少留11位
+     * @param offset 写入起始位置
+     * @return int 写入的字符数
+     */
+    public static int encodeBase62(long value, char[] buf, int offset) {
+        int length = base62Length(value);
+        int pos = offset + length;
+        if (value < 0) {
+            // 先按无符号除一次，剩下的就是正数
+            long quotient = Long.divideUnsigned(value, 62);
+            buf[--pos] = BASE62_ALPHABET[(int) (value - quotient * 62)];
+            value = quotient;
+        }
+        do {
+            buf[--pos] = BASE62_ALPHABET[(int) (value % 62)];
+            value /= 62;
+        } while (value != 0);
+        return length;
+    }
+
+    /**
+     * long按无符号数做Base62编码追加到sb
+     */
+    public static void appendBase62(long value, StringBuilder sb) {
+        int start = sb.length();
+        int length = base62Length(value);
+        sb.setLength(start + length);
+        int pos = start + length;
+        if (value < 0) {
+            long quotient = Long.divideUnsigned(value, 62);
+            sb.setCharAt(--pos, BASE62_ALPHABET[(int) (value - quotient * 62)]);
+            value = quotient;
+        }
+        do {
+            sb.setCharAt(--pos, BASE62_ALPHABET[(int) (value % 62)]);
+            value /= 62;
+        } while (value != 0);
+    }
+
+    /** 高5位为数据中心id，低5位为进程id */
+    private static long defaultNodeId() {
+        long dataCenterId = IdUtil.getDataCenterId(31);
+        return (dataCenterId << 5 | IdUtil.getWorkerId(dataCenterId, 31)) & MAX_NODE_ID;
+    }
+
+    private static int base62Length(long value) {
+        if (value < 0) {
+            return MAX_BASE62_LENGTH;
+        }
+        int length = 1;
+        while (value >= 62) {
+            value /= 62;
+            length++;
+        }
+        return length;
     }
 }
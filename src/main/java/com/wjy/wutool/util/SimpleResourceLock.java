@@ -1,13 +1,46 @@
 package com.wjy.wutool.util;
 
+import lombok.Getter;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 
 /**
  * 简单资源操作锁。定义资源操作对象T key
+ * <p>
+ * 支持三种锁模式：
+ * <ul>
+ * <li>PER_KEY：每个key一把锁，锁创建后不删除。key数量有限时使用，旧版本行为</li>
+ * <li>STRIPED：固定数量的分段锁，key按哈希映射到其中一把，内存固定。不同key可能共用一把锁，注意不要嵌套加锁</li>
+ * <li>REF_COUNTED：每个key一把锁，按持有和等待的线程数计数，没有线程使用时删除。适合设备id、订单号等高基数key</li>
+ * </ul>
+ * 开启读写模式后，doApplyShared之间可以并发执行，和doApply互斥，适合读多写少的资源。未开启时共享操作也按独占执行
+ * <p>
+ * doApply会一直阻塞到拿到锁，资源处理慢时可用tryApply限定等待时间，或用doApplyInterruptibly响应中断
+ * <p>
+ * 同时操作多个资源时用doApplyAll，按固定顺序加锁，不要嵌套doApply，避免死锁。
+ * applyAsync把同一个key的操作串成队列在线程池里依次执行，调用方不阻塞，同一个key上的操作保持提交顺序
  *
  * @author weijiayu
  * @date 2025/3/18 0:06
@@ -15,25 +48,508 @@ import java.util.function.Function;
 @Slf4j
 public class SimpleResourceLock<T> {
 
-    private ConcurrentHashMap<T, ReentrantLock> rsLockMap;
+    /** 分段锁模式默认的锁个数 */
+    private static final int DEFAULT_STRIPES = 256;
+    /** 一直等待 */
+    private static final long WAIT_FOREVER = -1L;
+    /** 一直等待，可被中断 */
+    private static final long WAIT_INTERRUPTIBLY = -2L;
+    /** 锁对象的全局创建序号，多key加锁时按序号排序 */
+    private static final AtomicLong LOCK_SEQUENCE = new AtomicLong();
+    private static final Comparator<KeyLock> LOCK_ORDER = Comparator.comparingLong(k -> k.order);
+
+    private final LockMode lockMode;
+    private final boolean readWrite;
+    private ConcurrentHashMap<T, KeyLock> rsLockMap;
+    private KeyLock[] stripes;
+
+    /** 按key统计的锁竞争指标，开启后才统计 */
+    private volatile ConcurrentHashMap<T, LockMetrics> metricsMap;
+    /** 统计的key数上限，超出的key汇总到overflowMetrics */
+    private volatile int maxMetricsKeys;
+    private final LockMetrics overflowMetrics = new LockMetrics();
+
+    /** 异步执行时每个key最后一个排队的操作，执行完且没有后续操作时删除 */
+    private final ConcurrentHashMap<T, CompletableFuture<Object>> asyncTailMap = new ConcurrentHashMap<>();
+    /** 异步执行的线程池，为null时使用共享的AsyncExecutorHolder.EXECUTOR */
+    private volatile Executor asyncExecutor = null;
 
     public SimpleResourceLock() {
-        this.rsLockMap = new ConcurrentHashMap<>();
+        this(LockMode.PER_KEY);
+    }
+
+    public SimpleResourceLock(LockMode lockMode) {
+        this(lockMode, DEFAULT_STRIPES, false);
+    }
+
+    public SimpleResourceLock(LockMode lockMode, boolean readWrite) {
+        this(lockMode, DEFAULT_STRIPES, readWrite);
+    }
+
+    /**
+     *
+     * @param lockMode 锁模式
+     * @param stripeCount 分段锁模式下的锁个数，会向上取整为2的幂，其他模式忽略
+     * @param readWrite 是否开启读写模式
+     */
+    public SimpleResourceLock(LockMode lockMode, int stripeCount, boolean readWrite) {
+        this.lockMode = lockMode;
+        this.readWrite = readWrite;
+        if (lockMode == LockMode.STRIPED) {
+            int size = 1;
+            while (size < stripeCount) {
+                size <<= 1;
+            }
+            this.stripes = new KeyLock[size];
+            for (int i = 0; i < size; i++) {
+                stripes[i] = new KeyLock(readWrite);
+            }
+        } else {
+            this.rsLockMap = new ConcurrentHashMap<>();
+        }
     }
 
     public Object doApply(T key, Function<T, Object> applyFunc) {
+        return applyQuietly(key, applyFunc, false, WAIT_FOREVER);
+    }
+
+    /**
+     * 在限定时间内拿到锁才执行
+     *
+     * @param key 资源key
+     * @param timeout 等待锁的最长时间
+     * @param unit 时间单位
+     * @param applyFunc 资源操作
+     * @return java.lang.Object 执行结果，等锁超时、被中断或执行异常时返回null
+     */
+    public Object tryApply(T key, long timeout, TimeUnit unit, Function<T, Object> applyFunc) {
+        return applyQuietly(key, applyFunc, false, Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    /**
+     * 等锁期间可被中断
+     *
+     * @return java.lang.Object 执行结果，执行异常时返回null
+     * @throws InterruptedException 等锁期间被中断
+     */
+    public Object doApplyInterruptibly(T key, Function<T, Object> applyFunc) throws InterruptedException {
+        return apply(key, applyFunc, false, WAIT_INTERRUPTIBLY);
+    }
+
+    /**
+     * 共享执行。读写模式下多个共享操作可并发，和独占操作互斥
+     */
+    public Object doApplyShared(T key, Function<T, Object> applyFunc) {
+        return applyQuietly(key, applyFunc, true, WAIT_FOREVER);
+    }
+
+    /**
+     * 在限定时间内拿到共享锁才执行
+     *
+     * @return java.lang.Object 执行结果，等锁超时、被中断或执行异常时返回null
+     */
+    public Object tryApplyShared(T key, long timeout, TimeUnit unit, Function<T, Object> applyFunc) {
+        return applyQuietly(key, applyFunc, true, Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    /**
+     * 同时锁住多个资源后执行。锁按固定顺序获取，重复key或映射到同一把锁的key只加一次锁
+     *
+     * @param keys 资源key集合
+     * @param applyFunc 资源操作，入参为keys
+     * @return java.lang.Object 执行结果，执行异常时返回null
+     */
+    public Object doApplyAll(Collection<T> keys, Function<Collection<T>, Object> applyFunc) {
+        return applyAllQuietly(keys, applyFunc, WAIT_FOREVER);
+    }
+
+    /**
+     * 在限定时间内锁住全部资源才执行，超时时释放已拿到的锁
+     *
+     * @return java.lang.Object 执行结果，等锁超时、被中断或执行异常时返回null
+     */
+    public Object tryApplyAll(Collection<T> keys, long timeout, TimeUnit unit,
+                              Function<Collection<T>, Object> applyFunc) {
+        return applyAllQuietly(keys, applyFunc, Math.max(0L, unit.toNanos(timeout)));
+    }
+
+    /**
+     * 异步执行。同一个key的异步操作按提交顺序依次在线程池中执行，执行时同样持有key的锁，和doApply互斥
+     *
+     * @param key 资源key
+     * @param applyFunc 资源操作
+     * @return java.util.concurrent.CompletableFuture<java.lang.Object> 执行结果，执行异常时结果为null
+     */
+    public CompletableFuture<Object> applyAsync(T key, Function<T, Object> applyFunc) {
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Executor executor = asyncExecutor != null ? asyncExecutor : AsyncExecutorHolder.EXECUTOR;
+        AtomicReference<CompletableFuture<Object>> holder = new AtomicReference<>();
+        asyncTailMap.compute(key, (k, tail) -> {
+            // 接在上一个操作后面，不管上一个成功与否都继续执行
+            CompletableFuture<Object> next = tail == null
+                ? CompletableFuture.supplyAsync(() -> doApply(k, applyFunc), executor)
+                : tail.handleAsync((r, e) -> doApply(k, applyFunc), executor);
+            holder.set(next);
+            return next;
+        });
+        CompletableFuture<Object> next = holder.get();
+        return next.whenComplete((r, e) -> asyncTailMap.remove(key, next));
+    }
+
+    /**
+     * 设置异步执行的线程池。默认使用所有SimpleResourceLock共享的专用守护线程池，
+     * 资源操作里有阻塞IO时不会占用ForkJoinPool.commonPool()，影响parallel stream等其他使用方
+     */
+    public void setAsyncExecutor(Executor executor) {
+        this.asyncExecutor = executor;
+    }
+
+    /**
+     * 开启按key的锁竞争统计：等锁时间、持锁时间、等待队列长度
+     *
+     * @param maxTrackedKeys 最多单独统计的key数，超出的key汇总统计，避免高基数key撑大内存
+     */
+    public void enableMetrics(int maxTrackedKeys) {
+        this.maxMetricsKeys = maxTrackedKeys;
+        if (metricsMap == null) {
+            metricsMap = new ConcurrentHashMap<>();
+        }
+    }
+
+    public void disableMetrics() {
+        metricsMap = null;
+    }
+
+    /**
+     * 取key的锁竞争统计
+     *
+     * @return com.wjy.wutool.util.SimpleResourceLock.MetricsSnapshot 未开启或key未单独统计时返回null
+     */
+    public MetricsSnapshot getMetrics(T key) {
+        ConcurrentHashMap<T, LockMetrics> map = metricsMap;
+        LockMetrics metrics = map == null ? null : map.get(key);
+        return metrics == null ? null : metrics.snapshot();
+    }
+
+    /** 所有单独统计的key的锁竞争统计 */
+    public Map<T, MetricsSnapshot> getAllMetrics() {
+        Map<T, MetricsSnapshot> result = new HashMap<>();
+        ConcurrentHashMap<T, LockMetrics> map = metricsMap;
+        if (map != null) {
+            map.forEach((k, v) -> result.put(k, v.snapshot()));
+        }
+        return result;
+    }
+
+    /** 超出统计key数上限后汇总的锁竞争统计 */
+    public MetricsSnapshot getOverflowMetrics() {
+        return overflowMetrics.snapshot();
+    }
+
+    /**
+     * 当前持有的锁对象个数。分段锁模式下固定为锁个数
+     */
+    public int getLockCount() {
+        return lockMode == LockMode.STRIPED ? stripes.length : rsLockMap.size();
+    }
+
+    private Object applyQuietly(T key, Function<T, Object> applyFunc, boolean shared, long waitNanos) {
+        try {
+            return apply(key, applyFunc, shared, waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("resource lock interrupted, key={}", key);
+            return null;
+        }
+    }
+
+    /**
+     * @param waitNanos 等锁时间，单位纳秒。WAIT_FOREVER为一直等待，WAIT_INTERRUPTIBLY为一直等待且可中断
+     */
+    private Object apply(T key, Function<T, Object> applyFunc, boolean shared, long waitNanos)
+        throws InterruptedException {
         if (key == null) {
             return null;
         }
-        ReentrantLock rslLock = rsLockMap.computeIfAbsent(key, k -> new ReentrantLock());
+        KeyLock keyLock = acquireLock(key);
         try {
-            rslLock.lock();
-            return applyFunc.apply(key);
+            Lock lock = shared ? keyLock.shared : keyLock.exclusive;
+            LockMetrics metrics = metricsOf(key);
+            long startNanos = 0L;
+            if (metrics != null) {
+                startNanos = System.nanoTime();
+                // 队列长度需要遍历等待队列，只在开启统计时采样
+                metrics.recordQueueLength(keyLock.getQueueLength());
+            }
+            if (waitNanos == WAIT_FOREVER) {
+                lock.lock();
+            } else if (waitNanos == WAIT_INTERRUPTIBLY) {
+                lock.lockInterruptibly();
+            } else if (!lock.tryLock(waitNanos, TimeUnit.NANOSECONDS)) {
+                if (metrics != null) {
+                    metrics.timeoutCount.increment();
+                }
+                log.warn("resource lock wait timeout, key={}", key);
+                return null;
+            }
+            long lockedNanos = metrics == null ? 0L : System.nanoTime();
+            try {
+                return applyFunc.apply(key);
+            } catch (Throwable e) {
+                log.error(e.getMessage(), e);
+                return null;
+            } finally {
+                lock.unlock();
+                if (metrics != null) {
+                    metrics.recordAcquire(lockedNanos - startNanos, System.nanoTime() - lockedNanos);
+                }
+            }
+        } finally {
+            releaseLock(key, keyLock);
+        }
+    }
+
+    private Object applyAllQuietly(Collection<T> keys, Function<Collection<T>, Object> applyFunc, long waitNanos) {
+        try {
+            return applyAll(keys, applyFunc, waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("resource lock interrupted, keys={}", keys);
+            return null;
+        }
+    }
+
+    private Object applyAll(Collection<T> keys, Function<Collection<T>, Object> applyFunc, long waitNanos)
+        throws InterruptedException {
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        List<T> pinnedKeys = new ArrayList<>(keys.size());
+        List<KeyLock> pinnedLocks = new ArrayList<>(keys.size());
+        int lockedCount = 0;
+        KeyLock[] ordered = null;
+        try {
+            for (T key : keys) {
+                if (key != null) {
+                    pinnedLocks.add(acquireLock(key));
+                    pinnedKeys.add(key);
+                }
+            }
+            // 按创建序号排序并去重，所有调用方加锁顺序一致
+            ordered = pinnedLocks.toArray(new KeyLock[0]);
+            Arrays.sort(ordered, LOCK_ORDER);
+            int distinct = 0;
+            for (int i = 0; i < ordered.length; i++) {
+                if (i == 0 || ordered[i] != ordered[i - 1]) {
+                    ordered[distinct++] = ordered[i];
+                }
+            }
+            long deadline = waitNanos >= 0 ? System.nanoTime() + waitNanos : 0L;
+            for (int i = 0; i < distinct; i++) {
+                Lock lock = ordered[i].exclusive;
+                if (waitNanos == WAIT_FOREVER) {
+                    lock.lock();
+                } else if (!lock.tryLock(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    log.warn("resource lock wait timeout, keys={}", keys);
+                    return null;
+                }
+                lockedCount++;
+            }
+            return applyFunc.apply(keys);
+        } catch (InterruptedException e) {
+            throw e;
         } catch (Throwable e) {
             log.error(e.getMessage(), e);
             return null;
         } finally {
-            rslLock.unlock();
+            for (int i = lockedCount - 1; i >= 0; i--) {
+                ordered[i].exclusive.unlock();
+            }
+            for (int i = 0; i < pinnedKeys.size(); i++) {
+                releaseLock(pinnedKeys.get(i), pinnedLocks.get(i));
+            }
+        }
+    }
+
+    private LockMetrics metricsOf(T key) {
+        ConcurrentHashMap<T, LockMetrics> map = metricsMap;
+        if (map == null) {
+            return null;
+        }
+        LockMetrics metrics = map.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (map.size() >= maxMetricsKeys) {
+            return overflowMetrics;
+        }
+        return map.computeIfAbsent(key, k -> new LockMetrics());
+    }
+
+    /** 取key对应的锁。引用计数模式下同时登记一个使用者，用完需调用releaseLock */
+    private KeyLock acquireLock(T key) {
+        switch (lockMode) {
+            case STRIPED:
+                return stripes[spread(key.hashCode()) & (stripes.length - 1)];
+            case REF_COUNTED:
+                // 计数只在compute里修改，和删除在同一个桶锁内完成，不会删掉刚被别人取到的锁
+                return rsLockMap.compute(key, (k, v) -> {
+                    KeyLock lock = v == null ? new KeyLock(readWrite) : v;
+                    lock.refCount++;
+                    return lock;
+                });
+            default:
+                return rsLockMap.computeIfAbsent(key, k -> new KeyLock(readWrite));
+        }
+    }
+
+    private void releaseLock(T key, KeyLock lock) {
+        if (lockMode == LockMode.REF_COUNTED) {
+            rsLockMap.computeIfPresent(key, (k, v) -> --v.refCount == 0 ? null : v);
+        }
+    }
+
+    /** 打散哈希，避免低位相同的key集中到少数几把锁上 */
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 默认的异步执行线程池，第一次用到applyAsync时才创建。守护线程，空闲超时后回收
+     */
+    private static final class AsyncExecutorHolder {
+
+        private static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            int threads = Runtime.getRuntime().availableProcessors();
+            EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                (r) -> {
+                    Thread t = new Thread(r, "simple-resource-lock-async");
+                    t.setDaemon(true);
+                    return t;
+                });
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * 锁模式
+     */
+    public enum LockMode {
+        /** 每个key一把锁，不删除 */
+        PER_KEY,
+        /** 固定数量的分段锁 */
+        STRIPED,
+        /** 每个key一把锁，无人使用时删除 */
+        REF_COUNTED
+    }
+
+    /**
+     * key对应的锁。非读写模式下独占和共享都是同一把ReentrantLock
+     * 读写锁选用ReentrantReadWriteLock而不是StampedLock，保持同一线程嵌套doApply可重入
+     */
+    private static final class KeyLock {
+
+        private final ReentrantLock lock;
+        private final ReentrantReadWriteLock rwLock;
+        private final Lock exclusive;
+        private final Lock shared;
+        /** 创建序号，多key加锁的顺序 */
+        private final long order = LOCK_SEQUENCE.incrementAndGet();
+        /** 持有和等待的线程数，只在map的compute里读写 */
+        private int refCount;
+
+        private KeyLock(boolean readWrite) {
+            if (readWrite) {
+                this.lock = null;
+                this.rwLock = new ReentrantReadWriteLock();
+                this.exclusive = rwLock.writeLock();
+                this.shared = rwLock.readLock();
+            } else {
+                this.lock = new ReentrantLock();
+                this.rwLock = null;
+                this.exclusive = lock;
+                this.shared = lock;
+            }
+        }
+
+        private int getQueueLength() {
+            return lock != null ? lock.getQueueLength() : rwLock.getQueueLength();
+        }
+    }
+
+    /**
+     * 锁竞争统计
+     */
+    private static final class LockMetrics {
+
+        private final LongAdder acquireCount = new LongAdder();
+        private final LongAdder timeoutCount = new LongAdder();
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0L);
+        private final LongAdder totalHoldNanos = new LongAdder();
+        private final LongAccumulator maxHoldNanos = new LongAccumulator(Math::max, 0L);
+        private final LongAdder totalQueueLength = new LongAdder();
+        private final LongAccumulator maxQueueLength = new LongAccumulator(Math::max, 0L);
+
+        private void recordQueueLength(int queueLength) {
+            totalQueueLength.add(queueLength);
+            maxQueueLength.accumulate(queueLength);
+        }
+
+        private void recordAcquire(long waitNanos, long holdNanos) {
+            acquireCount.increment();
+            totalWaitNanos.add(waitNanos);
+            maxWaitNanos.accumulate(waitNanos);
+            totalHoldNanos.add(holdNanos);
+            maxHoldNanos.accumulate(holdNanos);
+        }
+
+        private MetricsSnapshot snapshot() {
+            long acquires = acquireCount.sum();
+            long timeouts = timeoutCount.sum();
+            long attempts = acquires + timeouts;
+            return new MetricsSnapshot(acquires, timeouts,
+                acquires == 0 ? 0L : totalWaitNanos.sum() / acquires, maxWaitNanos.get(),
+                acquires == 0 ? 0L : totalHoldNanos.sum() / acquires, maxHoldNanos.get(),
+                attempts == 0 ? 0D : (double) totalQueueLength.sum() / attempts, maxQueueLength.get());
+        }
+    }
+
+    /**
+     * 锁竞争统计快照
+     */
+    @Getter
+    @ToString
+    public static class MetricsSnapshot {
+
+        /** 成功拿到锁的次数 */
+        private final long acquireCount;
+        /** 等锁超时次数 */
+        private final long timeoutCount;
+        private final long averageWaitNanos;
+        private final long maxWaitNanos;
+        private final long averageHoldNanos;
+        private final long maxHoldNanos;
+        /** 开始等锁时的平均排队线程数 */
+        private final double averageQueueLength;
+        private final long maxQueueLength;
+
+        private MetricsSnapshot(long acquireCount, long timeoutCount, long averageWaitNanos, long maxWaitNanos,
+                                long averageHoldNanos, long maxHoldNanos, double averageQueueLength,
+                                long maxQueueLength) {
+            this.acquireCount = acquireCount;
+            this.timeoutCount = timeoutCount;
+            this.averageWaitNanos = averageWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.averageHoldNanos = averageHoldNanos;
+            this.maxHoldNanos = maxHoldNanos;
+            this.averageQueueLength = averageQueueLength;
+            this.maxQueueLength = maxQueueLength;
         }
     }
 }
@@ -0,0 +1,40 @@
+package com.wjy.wutool.web.mybatis;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+/**
+ * pg数据库号段表mapper。一条update语句完成加步长和取新值，行锁保证多节点并发预留不重叠
+ * 表结构：
+ * <pre>
+ * CREATE TABLE id_segment (
+ *     biz_tag     VARCHAR(64) PRIMARY KEY,
+ *     max_id      BIGINT      NOT NULL DEFAULT 0,
+ *     update_time TIMESTAMP   NOT NULL DEFAULT now()
+ * );
+ * </pre>
+ * 需通过@MapperScan或mybatis配置注册
+ *
+ * @author weijiayu
+ * @date 2026/10/17 18:50
+ */
+public interface IdSegmentMapper {
+
+    /**
+     * 号段加步长并返回新的最大值
+     *
+     * @return java.lang.Long 业务标识不存在时返回null
+     */
+    @Select("UPDATE id_segment SET max_id = max_id + #{step}, update_time = now() WHERE biz_tag = #{bizTag} "
+        + "RETURNING max_id")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE, useCache = false)
+    Long increaseMaxId(@Param("bizTag") String bizTag, @Param("step") int step);
+
+    /**
+     * 初始化业务标识，已存在时忽略
+     */
+    @Insert("INSERT INTO id_segment (biz_tag, max_id) VALUES (#{bizTag}, 0) ON CONFLICT (biz_tag) DO NOTHING")
+    int insertIfAbsent(@Param("bizTag") String bizTag);
+}
@@ -0,0 +1,33 @@
+package com.wjy.wutool.web.mybatis;
+
+import com.wjy.wutool.util.SegmentSource;
+
+/**
+ * 基于pg号段表的号段来源。业务标识第一次使用时自动建行
+ * 不要在业务事务里直接调用reserve，否则预留会随业务事务回滚；通过SegmentIdAllocator使用时预留总在预取线程上执行，不加入业务事务
+ * 使用示例：new SegmentIdAllocator("order", new MybatisSegmentSource(idSegmentMapper), 1000)
+ *
+ * @author weijiayu
+ * @date 2026/10/17 18:55
+ */
+public class MybatisSegmentSource implements SegmentSource {
+
+    private final IdSegmentMapper idSegmentMapper;
+
+    public MybatisSegmentSource(IdSegmentMapper idSegmentMapper) {
+        this.idSegmentMapper = idSegmentMapper;
+    }
+
+    @Override
+    public long reserve(String bizTag, int step) {
+        Long maxId = idSegmentMapper.increaseMaxId(bizTag, step);
+        if (maxId == null) {
+            idSegmentMapper.insertIfAbsent(bizTag);
+            maxId = idSegmentMapper.increaseMaxId(bizTag, step);
+        }
+        if (maxId == null) {
+            throw new IllegalStateException("reserve id segment failed, bizTag=" + bizTag);
+        }
+        return maxId;
+    }
+}
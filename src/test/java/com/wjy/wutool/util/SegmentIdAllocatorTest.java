@@ -0,0 +1,106 @@
+package com.wjy.wutool.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 号段id分配器测试，使用基于本地文件的号段来源
+ *
+ * @author weijiayu
+ * @date 2026/10/17 23:10
+ */
+class SegmentIdAllocatorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void firstIdStartsAtOne() {
+        SegmentIdAllocator allocator = new SegmentIdAllocator("order", new FileSegmentSource(dir), 10);
+        for (long expected = 1; expected <= 25; expected++) {
+            assertEquals(expected, allocator.nextId());
+        }
+    }
+
+    @Test
+    void allocatorsSharingOneSourceNeverOverlap() throws Exception {
+        // 两个分配器模拟两个节点，共用同一个计数文件
+        SegmentIdAllocator node1 = new SegmentIdAllocator("order", new FileSegmentSource(dir), 100);
+        SegmentIdAllocator node2 = new SegmentIdAllocator("order", new FileSegmentSource(dir), 100);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        AtomicBoolean duplicated = new AtomicBoolean();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            SegmentIdAllocator allocator = i % 2 == 0 ? node1 : node2;
+            tasks.add(() -> {
+                for (int j = 0; j < 5000; j++) {
+                    if (!ids.add(allocator.nextId())) {
+                        duplicated.set(true);
+                    }
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks, 30, TimeUnit.SECONDS)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertFalse(duplicated.get());
+        assertEquals(40000, ids.size());
+        assertFalse(ids.contains(0L));
+    }
+
+    @Test
+    void reserveNeverRunsOnCallerThread() {
+        Thread caller = Thread.currentThread();
+        AtomicBoolean onCaller = new AtomicBoolean();
+        FileSegmentSource fileSource = new FileSegmentSource(dir);
+        SegmentIdAllocator allocator = new SegmentIdAllocator("order", (bizTag, step) -> {
+            if (Thread.currentThread() == caller) {
+                onCaller.set(true);
+            }
+            return fileSource.reserve(bizTag, step);
+        }, 10, 0.9D);
+        for (int i = 0; i < 100; i++) {
+            allocator.nextId();
+        }
+        assertFalse(onCaller.get());
+    }
+
+    @Test
+    void failedReserveIsRethrownAndRetried() {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        FileSegmentSource fileSource = new FileSegmentSource(dir);
+        SegmentIdAllocator allocator = new SegmentIdAllocator("order", (bizTag, step) -> {
+            if (fail.get()) {
+                throw new IllegalStateException("db down");
+            }
+            return fileSource.reserve(bizTag, step);
+        }, 10);
+        IllegalStateException e = assertThrows(IllegalStateException.class, allocator::nextId);
+        assertEquals("db down", e.getMessage());
+        fail.set(false);
+        assertTrue(allocator.nextId() >= 1);
+    }
+}